@@ -0,0 +1,27 @@
+package com.example.carclock;
+
+import android.app.Application;
+import android.os.StrictMode;
+
+public class CarClockApp extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        if (BuildConfig.STRICT_MODE) {
+            // Debug builds crash on main-thread disk or network access, so a test run fails on it
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .detectNetwork()
+                    .penaltyLog()
+                    .penaltyDeath()
+                    .build());
+            StrictMode.setVmPolicy(new StrictMode.VmPolicy.Builder()
+                    .detectLeakedClosableObjects()
+                    .detectLeakedRegistrationObjects()
+                    .penaltyLog()
+                    .build());
+        }
+    }
+}
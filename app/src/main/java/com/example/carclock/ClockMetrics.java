@@ -0,0 +1,228 @@
+package com.example.carclock;
+
+import android.app.Application;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import com.example.carclock.core.AmbientPolicy;
+import com.example.carclock.core.GestureRecognizer;
+import com.example.carclock.core.Histogram;
+import com.example.carclock.core.TickScheduler;
+
+import java.io.PrintWriter;
+
+/**
+ * Counters and histograms collected by the running service. Recording only touches
+ * primitives; the dumpsys text and the ACTION_QUERY_METRICS bundle are built on demand.
+ */
+final class ClockMetrics {
+
+    final Histogram tickRenderUs = new Histogram("us", 50, 100, 250, 500, 1000, 2500, 5000, 16_000);
+    final Histogram drawUs = new Histogram("us", 50, 100, 250, 500, 1000, 2500, 5000, 16_000);
+    final Histogram timerFrameUs = new Histogram("us", 50, 100, 250, 500, 1000, 2500, 5000, 16_000);
+    // First ACTION_DOWN to callback, indexed by GestureRecognizer.GESTURE_*; a click includes the double-tap wait
+    final Histogram[] gestureLatencyMs = {
+            new Histogram("ms", 50, 100, 200, 300, 400, 500, 800, 1000),
+            new Histogram("ms", 50, 100, 200, 300, 400, 500, 800, 1000),
+            new Histogram("ms", 50, 100, 200, 300, 400, 500, 800, 1000),
+    };
+    private static final String[] GESTURE_NAMES = {"click", "double_click", "long_press"};
+
+    private final String[] actions;
+    private final long[] commandCounts; // last slot counts unknown actions
+
+    private long createdAtUptime = 0;
+    private long firstFrameMillis = -1;
+    private long firstFrameElapsed = -1;
+    private long firstFrameSinceBootMillis = -1; // boot-to-first-draw when started from BOOT_COMPLETED
+    private boolean startedFromBoot = false;
+    private long windowUpdates = 0;
+    private long intentCommands = 0; // onStartCommand
+    private long ipcCommands = 0; // MainActivity's Messenger
+    private long lightWakeups = 0; // light sensor deliveries, a batch counts once
+    private volatile Bundle lastMemory; // written on the io thread by sampleMemory()
+
+    private TickScheduler tickScheduler;
+    private LayoutPassCounter layoutPassCounter;
+    private DragController dragController;
+    private SettingsStore settings;
+    private AmbientPolicy ambient;
+
+    ClockMetrics(String[] actions) {
+        this.actions = actions;
+        this.commandCounts = new long[actions.length + 1];
+    }
+
+    void attach(TickScheduler tickScheduler, LayoutPassCounter layoutPassCounter,
+                DragController dragController, SettingsStore settings, AmbientPolicy ambient) {
+        this.tickScheduler = tickScheduler;
+        this.layoutPassCounter = layoutPassCounter;
+        this.dragController = dragController;
+        this.settings = settings;
+        this.ambient = ambient;
+    }
+
+    void onCreate() {
+        createdAtUptime = SystemClock.uptimeMillis();
+    }
+
+    void onFirstFrame() {
+        if (firstFrameMillis >= 0) return;
+        firstFrameMillis = SystemClock.uptimeMillis() - createdAtUptime;
+        firstFrameElapsed = SystemClock.elapsedRealtime();
+        recordSinceBoot();
+    }
+
+    /** The service was started by the boot broadcast; may come before or after the first frame. */
+    void onBootStart() {
+        startedFromBoot = true;
+        recordSinceBoot();
+    }
+
+    // Time since boot only measures boot-to-clock when boot is what started the service
+    private void recordSinceBoot() {
+        if (!startedFromBoot || firstFrameElapsed < 0 || firstFrameSinceBootMillis >= 0) return;
+        firstFrameSinceBootMillis = firstFrameElapsed;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.setCounter("CarClock.firstDrawSinceBootMs", firstFrameSinceBootMillis);
+        }
+    }
+
+    /** updateViewLayout calls outside of drags (drags are counted by DragController). */
+    void onWindowUpdate() {
+        windowUpdates++;
+    }
+
+    void countIntentCommand() { intentCommands++; }
+
+    void countIpcCommand() { ipcCommands++; }
+
+    void onLightWakeup() { lightWakeups++; }
+
+    void countCommand(String action) {
+        for (int i = 0; i < actions.length; i++) {
+            if (actions[i].equals(action)) {
+                commandCounts[i]++;
+                return;
+            }
+        }
+        commandCounts[actions.length]++;
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println("CarClock metrics:");
+        pw.println("  first frame after onCreate: " + firstFrameMillis + " ms");
+        pw.println("  first frame since boot: "
+                + (firstFrameSinceBootMillis >= 0 ? firstFrameSinceBootMillis + " ms" : "not started at boot"));
+        pw.println("  tick: " + (tickScheduler.isRunning() ? "running" : "suspended"));
+        tickScheduler.getJitter().dump(pw, "tick jitter");
+        tickRenderUs.dump(pw, "tick render");
+        timerFrameUs.dump(pw, "timer frame render");
+        drawUs.dump(pw, "draw");
+        pw.println("  layout passes: total=" + layoutPassCounter.getTotalPasses()
+                + " last minute=" + layoutPassCounter.getPassesLastMinute());
+        pw.println("  updateViewLayout: commands=" + windowUpdates
+                + " drags=" + (dragController != null ? dragController.getTotalUpdates() : 0)
+                + " last drag=" + (dragController != null ? dragController.getUpdatesLastDrag() : 0));
+        pw.println("  prefs writes: " + settings.getWriteCount());
+        CommandDispatcher.fastPathLatencyUs.dump(pw, "command dispatch (in-process)");
+        CommandDispatcher.servicePathLatencyUs.dump(pw, "command dispatch (startService)");
+        for (int g = 0; g < GestureRecognizer.GESTURE_COUNT; g++) {
+            gestureLatencyMs[g].dump(pw, "gesture " + GESTURE_NAMES[g].replace('_', ' '));
+        }
+        pw.println("  commands via startService=" + intentCommands + " messenger=" + ipcCommands);
+        pw.println("  ambient light: wakeups=" + lightWakeups + " readings=" + ambient.getReadingCount()
+                + " style switches=" + ambient.getSwitchCount());
+        Bundle memory = lastMemory;
+        if (memory == null) {
+            pw.println("  memory: not sampled yet");
+        } else {
+            pw.println("  memory (" + memory.getString("process") + ", "
+                    + (SystemClock.uptimeMillis() - memory.getLong("sampled_at")) / 1000 + " s ago): pss="
+                    + memory.getInt("pss_kb") + " kB"
+                    + " java heap=" + memory.getLong("java_heap_kb") + " kB"
+                    + " native heap=" + memory.getLong("native_heap_kb") + " kB");
+        }
+        pw.println("  commands:");
+        for (int i = 0; i <= actions.length; i++) {
+            if (commandCounts[i] == 0) continue;
+            pw.println("    " + (i < actions.length ? shortName(actions[i]) : "other") + "=" + commandCounts[i]);
+        }
+    }
+
+    Bundle toBundle() {
+        Bundle b = new Bundle();
+        b.putLong("first_frame_ms", firstFrameMillis);
+        b.putLong("first_frame_since_boot_ms", firstFrameSinceBootMillis);
+        b.putBoolean("tick_running", tickScheduler.isRunning());
+        putHistogram(b, "tick_jitter_ms", tickScheduler.getJitter());
+        putHistogram(b, "tick_render_us", tickRenderUs);
+        putHistogram(b, "timer_frame_us", timerFrameUs);
+        putHistogram(b, "draw_us", drawUs);
+        b.putLong("layout_passes", layoutPassCounter.getTotalPasses());
+        b.putInt("layout_passes_last_minute", layoutPassCounter.getPassesLastMinute());
+        b.putLong("window_updates_commands", windowUpdates);
+        b.putLong("window_updates_drags", dragController != null ? dragController.getTotalUpdates() : 0);
+        b.putLong("prefs_writes", settings.getWriteCount());
+        b.putLong("commands_intent", intentCommands);
+        b.putLong("commands_ipc", ipcCommands);
+        b.putLong("ambient_wakeups", lightWakeups);
+        b.putLong("ambient_readings", ambient.getReadingCount());
+        b.putLong("ambient_switches", ambient.getSwitchCount());
+        putHistogram(b, "dispatch_fast_us", CommandDispatcher.fastPathLatencyUs);
+        putHistogram(b, "dispatch_service_us", CommandDispatcher.servicePathLatencyUs);
+        for (int g = 0; g < GestureRecognizer.GESTURE_COUNT; g++) {
+            putHistogram(b, "gesture_" + GESTURE_NAMES[g] + "_ms", gestureLatencyMs[g]);
+        }
+        Bundle commands = new Bundle();
+        for (int i = 0; i <= actions.length; i++) {
+            commands.putLong(i < actions.length ? shortName(actions[i]) : "other", commandCounts[i]);
+        }
+        b.putBundle("commands", commands);
+        return b;
+    }
+
+    /**
+     * Takes a fresh {@link #memoryBundle()} and keeps it for {@link #dump}, which runs on the
+     * main thread and only prints the last one. Call on the io thread.
+     */
+    Bundle sampleMemory() {
+        Bundle memory = memoryBundle();
+        memory.putLong("sampled_at", SystemClock.uptimeMillis());
+        lastMemory = memory;
+        return memory;
+    }
+
+    /**
+     * This process's memory, to compare the :overlay process with the settings UI
+     * (dumpsys meminfo shows the same PSS). Takes tens of ms; call off the main thread.
+     */
+    private static Bundle memoryBundle() {
+        Debug.MemoryInfo info = new Debug.MemoryInfo();
+        Debug.getMemoryInfo(info);
+        Runtime runtime = Runtime.getRuntime();
+        Bundle b = new Bundle();
+        b.putString("process", Application.getProcessName());
+        b.putInt("pss_kb", info.getTotalPss());
+        b.putInt("private_dirty_kb", info.getTotalPrivateDirty());
+        b.putLong("java_heap_kb", (runtime.totalMemory() - runtime.freeMemory()) / 1024);
+        b.putLong("native_heap_kb", Debug.getNativeHeapAllocatedSize() / 1024);
+        return b;
+    }
+
+    private static void putHistogram(Bundle b, String name, Histogram h) {
+        b.putLong(name + "_count", h.getCount());
+        b.putLong(name + "_last", h.getLast());
+        b.putLong(name + "_mean", h.getMean());
+        b.putLong(name + "_max", h.getMax());
+        b.putLongArray(name + "_bounds", h.getUpperBounds());
+        b.putLongArray(name + "_buckets", h.getBuckets());
+    }
+
+    private static String shortName(String action) {
+        return action.substring(action.lastIndexOf('.') + 1);
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.carclock;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+import com.example.carclock.core.ClockStyle;
+import com.example.carclock.core.Histogram;
+
+/**
+ * Draws the clock from a glyph atlas instead of laying out text. The digits 0-9, ':' and
+ * '.' (timer hundredths) are rendered once per size/weight into an ALPHA_8 bitmap and tinted by the paint, so
+ * colour and opacity changes don't rebuild anything. The panel background and the
+ * opacity are drawn in the same pass, so no offscreen alpha layer is ever needed.
+ * The optional date / weekday / second zone fields go in a smaller info line underneath
+ * (one line per field in vertical mode); they change at most once a minute.
+ */
+public class ClockView extends View {
+
+    public static final int DEFAULT_STROKE_COLOR = 0x33FFFFFF;
+
+    private static final char[] GLYPHS = "0123456789:.".toCharArray();
+    private static final int GLYPH_SEPARATOR = 10;
+    private static final int GLYPH_DOT = 11; // shares the separator's cell width
+    private static final int MAX_CHARS = 8; // HH:mm:ss
+    private static final float INFO_SCALE = 0.4f; // info line size relative to the digits
+    private static final String INFO_SEPARATOR = "  ";
+
+    private final TextPaint atlasPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint glyphPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint panelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint strokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint infoPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF panelRect = new RectF();
+    private final Rect src = new Rect();
+    private final Rect dst = new Rect();
+
+    private final float cornerRadius;
+
+    private float textSizePx;
+    private boolean bold = false;
+    private boolean vertical = false;
+    private boolean showSeconds = true;
+
+    private int textColor = Color.WHITE;
+    private boolean panelVisible = true;
+    private int panelColor = 0x99000000;
+    private int strokeColor = DEFAULT_STROKE_COLOR;
+    private float strokeWidth;
+    private float opacity = 1f;
+
+    private Bitmap atlas;
+    private int cellWidth;
+    private int separatorWidth;
+    private int lineHeight;
+    private final int[] cellLeft = new int[MAX_CHARS];
+    private final int[] cellTop = new int[MAX_CHARS];
+
+    private final char[] text = new char[MAX_CHARS];
+    private int textLength = 0;
+
+    private String[] infoFields = new String[0];
+    private String[] infoLines = new String[0];
+    private int infoWidth; // only grows while the set of fields stays the same, so a new minute never relayouts
+    private int infoLineHeight;
+    private float infoBaseline;
+    private int timeHeight;
+
+    private Histogram drawTimeUs;
+    private Runnable onFirstDraw;
+
+    public ClockView(Context context) {
+        this(context, null);
+    }
+
+    public ClockView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        cornerRadius = dp(16);
+        strokeWidth = dp(1);
+        textSizePx = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 24, getResources().getDisplayMetrics());
+        strokePaint.setStyle(Paint.Style.STROKE);
+        atlasPaint.setTextAlign(Paint.Align.CENTER);
+        infoPaint.setTextAlign(Paint.Align.CENTER);
+        rebuildAtlas();
+        updatePaints();
+    }
+
+    public void setTextSize(float sp) {
+        float px = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, sp, getResources().getDisplayMetrics());
+        if (px == textSizePx) return;
+        textSizePx = px;
+        rebuildAtlas();
+    }
+
+    public void setBold(boolean bold) {
+        if (this.bold == bold) return;
+        this.bold = bold;
+        rebuildAtlas();
+    }
+
+    /** Fixes the cell layout; only this (not setTime) can change the view's size. */
+    public void setFormat(boolean vertical, boolean showSeconds) {
+        if (this.vertical == vertical && this.showSeconds == showSeconds) return;
+        this.vertical = vertical;
+        this.showSeconds = showSeconds;
+        layoutInfo(true);
+        computeCells();
+        requestLayout();
+        invalidate();
+    }
+
+    /** Swaps in a pre-built style; nothing is parsed or allocated here. */
+    void setStyle(ClockStyle style, boolean panelVisible) {
+        this.panelVisible = panelVisible;
+        textColor = panelVisible ? style.textColor : style.textColorNoPanel;
+        panelColor = style.panelColor;
+        strokeColor = style.strokeColor;
+        strokeWidth = style.strokeWidthPx;
+        updatePanelRect();
+        updatePaints();
+        invalidate();
+    }
+
+    /** Opacity of the whole clock (panel and digits), 0-1. */
+    public void setOpacity(float opacity) {
+        if (this.opacity == opacity) return;
+        this.opacity = opacity;
+        updatePaints();
+        invalidate();
+    }
+
+    /** Copies the new text and redraws only if a glyph changed. */
+    public void setTime(char[] buffer, int length) {
+        if (length != textLength) {
+            System.arraycopy(buffer, 0, text, 0, length);
+            textLength = length;
+            invalidate();
+            return;
+        }
+        boolean changed = false;
+        for (int i = 0; i < length; i++) {
+            if (text[i] == buffer[i]) continue;
+            text[i] = buffer[i];
+            changed = true;
+        }
+        if (changed) invalidate();
+    }
+
+    /**
+     * Sets the info line fields, null entries being off. Only called when a field's text
+     * changes; the view is re-laid out only if the info line needs more room.
+     */
+    public void setInfo(String... fields) {
+        int oldCount = infoFields.length;
+        int count = 0;
+        for (String field : fields) if (field != null) count++;
+        infoFields = new String[count];
+        count = 0;
+        for (String field : fields) if (field != null) infoFields[count++] = field;
+        layoutInfo(count != oldCount);
+        invalidate();
+    }
+
+    /** Records how long each onDraw takes and reports the first one. */
+    void setDrawMetrics(Histogram drawTimeUs, Runnable onFirstDraw) {
+        this.drawTimeUs = drawTimeUs;
+        this.onFirstDraw = onFirstDraw;
+    }
+
+    @Override
+    public boolean hasOverlappingRendering() {
+        return false;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int contentWidth = Math.max(timeWidth(), infoWidth);
+        int contentHeight = timeHeight + infoLines.length * infoLineHeight;
+        setMeasuredDimension(
+                resolveSize(contentWidth + getPaddingLeft() + getPaddingRight(), widthMeasureSpec),
+                resolveSize(contentHeight + getPaddingTop() + getPaddingBottom(), heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        computeCells();
+        updatePanelRect();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        long start = System.nanoTime();
+        if (panelVisible) {
+            canvas.drawRoundRect(panelRect, cornerRadius, cornerRadius, panelPaint);
+            if (strokeWidth > 0) canvas.drawRoundRect(panelRect, cornerRadius, cornerRadius, strokePaint);
+        }
+        for (int i = 0; i < textLength; i++) {
+            char c = text[i];
+            int glyph = c == ':' ? GLYPH_SEPARATOR : c == '.' ? GLYPH_DOT : c - '0';
+            if (glyph < 0 || glyph > GLYPH_DOT) continue; // line breaks in vertical mode
+            int width = glyph >= GLYPH_SEPARATOR ? separatorWidth : cellWidth;
+            int srcLeft = glyph == GLYPH_DOT ? GLYPH_SEPARATOR * cellWidth + separatorWidth : glyph * cellWidth;
+            src.set(srcLeft, 0, srcLeft + width, lineHeight);
+            dst.set(cellLeft[i], cellTop[i], cellLeft[i] + width, cellTop[i] + lineHeight);
+            canvas.drawBitmap(atlas, src, dst, glyphPaint);
+        }
+        float centre = getPaddingLeft() + Math.max(timeWidth(), infoWidth) / 2f;
+        for (int i = 0; i < infoLines.length; i++) {
+            float baseline = getPaddingTop() + timeHeight + i * infoLineHeight + infoBaseline;
+            canvas.drawText(infoLines[i], centre, baseline, infoPaint);
+        }
+        if (drawTimeUs != null) drawTimeUs.record((System.nanoTime() - start) / 1000);
+        if (onFirstDraw != null) {
+            Runnable callback = onFirstDraw;
+            onFirstDraw = null;
+            callback.run();
+        }
+    }
+
+    private void rebuildAtlas() {
+        atlasPaint.setTextSize(textSizePx);
+        atlasPaint.setTypeface(Typeface.create("sans-serif-medium", bold ? Typeface.BOLD : Typeface.NORMAL));
+        Paint.FontMetrics fm = atlasPaint.getFontMetrics();
+        lineHeight = (int) Math.ceil(fm.descent - fm.ascent);
+
+        float widest = 0;
+        for (int i = 0; i < GLYPH_SEPARATOR; i++) widest = Math.max(widest, atlasPaint.measureText(GLYPHS, i, 1));
+        cellWidth = (int) Math.ceil(widest);
+        separatorWidth = (int) Math.ceil(Math.max(atlasPaint.measureText(GLYPHS, GLYPH_SEPARATOR, 1),
+                atlasPaint.measureText(GLYPHS, GLYPH_DOT, 1)));
+
+        // The old atlas may still be referenced by a pending display list, so leave it to the GC
+        atlas = Bitmap.createBitmap(GLYPH_SEPARATOR * cellWidth + 2 * separatorWidth, lineHeight, Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(atlas);
+        float baseline = -fm.ascent;
+        for (int i = 0; i < GLYPH_SEPARATOR; i++) {
+            canvas.drawText(GLYPHS, i, 1, i * cellWidth + cellWidth / 2f, baseline, atlasPaint);
+        }
+        canvas.drawText(GLYPHS, GLYPH_SEPARATOR, 1, GLYPH_SEPARATOR * cellWidth + separatorWidth / 2f, baseline, atlasPaint);
+        canvas.drawText(GLYPHS, GLYPH_DOT, 1, GLYPH_SEPARATOR * cellWidth + separatorWidth * 1.5f, baseline, atlasPaint);
+
+        infoPaint.setTextSize(textSizePx * INFO_SCALE);
+        Paint.FontMetrics info = infoPaint.getFontMetrics();
+        infoLineHeight = (int) Math.ceil(info.descent - info.ascent);
+        infoBaseline = -info.ascent;
+        layoutInfo(true);
+        computeCells();
+        requestLayout();
+        invalidate();
+    }
+
+    /** Splits the fields into lines and measures them; {@code reset} lets the width shrink. */
+    private void layoutInfo(boolean reset) {
+        int oldLines = infoLines.length;
+        int oldWidth = infoWidth;
+        if (vertical || infoFields.length == 0) {
+            infoLines = infoFields;
+        } else {
+            infoLines = new String[] { String.join(INFO_SEPARATOR, infoFields) };
+        }
+        int width = 0;
+        for (String line : infoLines) width = Math.max(width, (int) Math.ceil(infoPaint.measureText(line)));
+        infoWidth = reset ? width : Math.max(infoWidth, width);
+        if (infoLines.length != oldLines || infoWidth != oldWidth) {
+            computeCells();
+            requestLayout();
+        }
+    }
+
+    private int timeWidth() {
+        if (vertical) return 2 * cellWidth;
+        int chars = showSeconds ? MAX_CHARS : 5;
+        int separators = chars / 3;
+        return (chars - separators) * cellWidth + separators * separatorWidth;
+    }
+
+    private void computeCells() {
+        int chars = showSeconds ? MAX_CHARS : 5;
+        timeHeight = vertical ? ((chars + 1) / 3) * lineHeight : lineHeight;
+        // Centred over the info line when that is the wider one
+        int left = getPaddingLeft() + Math.max(0, infoWidth - timeWidth()) / 2;
+        int top = getPaddingTop();
+        int x = left;
+        for (int i = 0; i < MAX_CHARS; i++) {
+            if (vertical) {
+                // "HH\nmm\nss": every third char is a line break
+                cellLeft[i] = left + (i % 3) * cellWidth;
+                cellTop[i] = top + (i / 3) * lineHeight;
+            } else {
+                cellLeft[i] = x;
+                cellTop[i] = top;
+                x += cellWidthAt(i);
+            }
+        }
+    }
+
+    private int cellWidthAt(int index) {
+        return !vertical && index % 3 == 2 ? separatorWidth : cellWidth;
+    }
+
+    private void updatePanelRect() {
+        float inset = strokeWidth / 2f;
+        panelRect.set(inset, inset, getWidth() - inset, getHeight() - inset);
+    }
+
+    private void updatePaints() {
+        // ALPHA_8 bitmaps are drawn in the paint's colour, so tinting the atlas is free
+        glyphPaint.setColor(withOpacity(textColor));
+        infoPaint.setColor(withOpacity(textColor));
+        panelPaint.setColor(withOpacity(panelColor));
+        strokePaint.setColor(withOpacity(strokeColor));
+        strokePaint.setStrokeWidth(strokeWidth);
+    }
+
+    private int withOpacity(int color) {
+        return (color & 0x00FFFFFF) | (Math.round(Color.alpha(color) * opacity) << 24);
+    }
+
+    private float dp(float value) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value, getResources().getDisplayMetrics());
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.carclock;
+
+import android.content.Intent;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.example.carclock.core.Histogram;
+
+/**
+ * Process-local route from {@link CommandReceiver} to a running {@link FloatingClockService}.
+ * While the service is registered, broadcasts are posted straight onto its handler instead
+ * of going through startForegroundService and onStartCommand.
+ */
+final class CommandDispatcher {
+
+    /** Nanos timestamp put on slow-path intents so the service can measure their latency. */
+    static final String EXTRA_DISPATCHED_AT = "com.example.carclock.extra.DISPATCHED_AT";
+
+    interface Target {
+        void onCommand(Intent intent);
+    }
+
+    private static volatile Handler handler;
+    private static volatile Target target;
+
+    // Receiver to the moment the service starts handling the command, per path. Both stop the
+    // clock before handling, so they only differ in the route. These stand in for a JMH
+    // benchmark: both routes go through Handler and ActivityManager, which :benchmarks can't run.
+    static final Histogram fastPathLatencyUs = new Histogram("us", 100, 250, 500, 1000, 2500, 5000, 10_000, 50_000);
+    static final Histogram servicePathLatencyUs = new Histogram("us", 100, 250, 500, 1000, 2500, 5000, 10_000, 50_000);
+
+    private CommandDispatcher() {}
+
+    static void register(Handler handler, Target target) {
+        CommandDispatcher.handler = handler;
+        CommandDispatcher.target = target;
+    }
+
+    static void unregister(Target target) {
+        if (CommandDispatcher.target != target) return;
+        CommandDispatcher.target = null;
+        CommandDispatcher.handler = null;
+    }
+
+    static boolean isRegistered() {
+        return target != null;
+    }
+
+    /** @return false if no service is running in this process and the caller must start it */
+    static boolean dispatch(Intent intent) {
+        Handler h = handler;
+        Target t = target;
+        if (h == null || t == null) return false;
+        long dispatchedAt = SystemClock.elapsedRealtimeNanos();
+        h.post(() -> {
+            fastPathLatencyUs.record((SystemClock.elapsedRealtimeNanos() - dispatchedAt) / 1000);
+            t.onCommand(intent);
+        });
+        return true;
+    }
+
+    static void stamp(Intent intent) {
+        intent.putExtra(EXTRA_DISPATCHED_AT, SystemClock.elapsedRealtimeNanos());
+    }
+
+    /** Records the receiver-to-service latency of an intent that took the startService path. */
+    static void recordServicePath(Intent intent) {
+        long dispatchedAt = intent.getLongExtra(EXTRA_DISPATCHED_AT, 0);
+        if (dispatchedAt != 0) servicePathLatencyUs.record((SystemClock.elapsedRealtimeNanos() - dispatchedAt) / 1000);
+    }
+}
@@ -8,24 +8,34 @@ import android.util.Log;
 
 public class CommandReceiver extends BroadcastReceiver {
 
+    private static final String TAG = "CarClock";
+
     @Override
     public void onReceive(Context context, Intent intent) {
         if (intent == null || intent.getAction() == null) return;
 
         String action = intent.getAction();
-        Log.d("CarClock", "Received Broadcast: " + action);
+        if (Log.isLoggable(TAG, Log.DEBUG)) Log.d(TAG, "Received Broadcast: " + action);
+
+        boolean isBoot = Intent.ACTION_BOOT_COMPLETED.equals(action) ||
+                Intent.ACTION_LOCKED_BOOT_COMPLETED.equals(action);
+
+        // Service already running in this process: hand the intent straight to its handler
+        if (!isBoot && CommandDispatcher.dispatch(intent)) return;
+        if (isBoot && CommandDispatcher.isRegistered()) return;
 
         Intent serviceIntent = new Intent(context, FloatingClockService.class);
-        
-        // If it's boot completed, we just start the service normally
+
+        // If it's boot completed, we just start the service, marked so it can time boot-to-clock
         // Otherwise, forward the specific action command
-        if (!Intent.ACTION_BOOT_COMPLETED.equals(action) && 
-            !Intent.ACTION_LOCKED_BOOT_COMPLETED.equals(action)) {
+        if (!isBoot) {
             serviceIntent.setAction(action);
-        }
-
-        if (intent.getExtras() != null) {
-            serviceIntent.putExtras(intent.getExtras());
+            if (intent.getExtras() != null) {
+                serviceIntent.putExtras(intent.getExtras());
+            }
+            CommandDispatcher.stamp(serviceIntent);
+        } else {
+            serviceIntent.putExtra(FloatingClockService.EXTRA_FROM_BOOT, true);
         }
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -34,4 +44,4 @@ public class CommandReceiver extends BroadcastReceiver {
             context.startService(serviceIntent);
         }
     }
-}
\ No newline at end of file
+}
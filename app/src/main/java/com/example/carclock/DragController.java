@@ -0,0 +1,116 @@
+package com.example.carclock;
+
+import android.util.DisplayMetrics;
+import android.util.TypedValue;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.WindowManager;
+
+/**
+ * Moves the overlay window during a drag. Touch moves only record the latest target;
+ * the window is updated at most once per vsync from a Choreographer frame callback, and
+ * the position is kept inside the display (optionally snapping to a nearby edge on release).
+ */
+final class DragController implements Choreographer.FrameCallback {
+
+    private static final float SNAP_DISTANCE_DP = 48;
+
+    private final WindowManager windowManager;
+    private final View view;
+    private final WindowManager.LayoutParams params;
+    private final int snapDistancePx;
+
+    private boolean snapToEdges = false;
+    private boolean framePending = false;
+    private int targetX, targetY;
+
+    private int updatesThisDrag = 0;
+    private int updatesLastDrag = 0;
+    private long totalUpdates = 0;
+
+    DragController(WindowManager windowManager, View view, WindowManager.LayoutParams params) {
+        this.windowManager = windowManager;
+        this.view = view;
+        this.params = params;
+        this.snapDistancePx = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
+                SNAP_DISTANCE_DP, view.getResources().getDisplayMetrics());
+    }
+
+    void setSnapToEdges(boolean snapToEdges) { this.snapToEdges = snapToEdges; }
+
+    void begin() {
+        targetX = params.x;
+        targetY = params.y;
+        updatesThisDrag = 0;
+    }
+
+    /** Records the latest drag target; the window follows on the next frame. */
+    void moveTo(int x, int y) {
+        targetX = clampX(x);
+        targetY = clampY(y);
+        if (framePending) return;
+        framePending = true;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /** Applies the final position right away (snapped if enabled) and closes the drag. */
+    void end() {
+        cancelFrame();
+        int x = targetX;
+        int y = targetY;
+        if (snapToEdges) {
+            DisplayMetrics metrics = view.getResources().getDisplayMetrics();
+            int maxX = Math.max(0, metrics.widthPixels - view.getWidth());
+            int maxY = Math.max(0, metrics.heightPixels - view.getHeight());
+            if (x < snapDistancePx) x = 0;
+            else if (maxX - x < snapDistancePx) x = maxX;
+            if (y < snapDistancePx) y = 0;
+            else if (maxY - y < snapDistancePx) y = maxY;
+        }
+        apply(x, y);
+        updatesLastDrag = updatesThisDrag;
+    }
+
+    /** Pulls a window that ended up off-screen (e.g. a stale saved position) back into view. */
+    void clampToDisplay() {
+        apply(clampX(params.x), clampY(params.y));
+    }
+
+    void cancelFrame() {
+        if (!framePending) return;
+        framePending = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    /** updateViewLayout calls made by the last completed drag. */
+    int getUpdatesLastDrag() { return updatesLastDrag; }
+
+    long getTotalUpdates() { return totalUpdates; }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        framePending = false;
+        apply(targetX, targetY);
+    }
+
+    private void apply(int x, int y) {
+        if (params.x == x && params.y == y) return;
+        params.x = x;
+        params.y = y;
+        windowManager.updateViewLayout(view, params);
+        updatesThisDrag++;
+        totalUpdates++;
+    }
+
+    // FLAG_LAYOUT_NO_LIMITS lets the window leave the screen, so keep it reachable ourselves
+    /** Keeps the whole view on the display, like a drag does. */
+    int clampX(int x) {
+        int max = view.getResources().getDisplayMetrics().widthPixels - view.getWidth();
+        return Math.max(0, Math.min(x, Math.max(0, max)));
+    }
+
+    int clampY(int y) {
+        int max = view.getResources().getDisplayMetrics().heightPixels - view.getHeight();
+        return Math.max(0, Math.min(y, Math.max(0, max)));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.carclock;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sends overlay gesture events to subscribed packages as package-targeted broadcasts, so
+ * only subscribers are woken. Unless switched off, each event also still goes out as the
+ * original implicit broadcast for receivers that never subscribed (Tasker profiles); a
+ * subscriber that registers its receiver at runtime gets both. Each event type goes out at most once per
+ * {@link #MIN_INTERVAL_MILLIS}; events in between are coalesced into the next delivery,
+ * which carries the latest payload and how many events it stands for.
+ * All delivery runs on the handler's (I/O) thread.
+ */
+final class EventPublisher {
+
+    static final long MIN_INTERVAL_MILLIS = 250;
+
+    private final Context context;
+    private final Handler handler;
+    private final String[] actions; // indexed by event type
+
+    // I/O thread only
+    private final Set<String> subscribers = new LinkedHashSet<>();
+    private boolean implicit = true;
+    private final Bundle[] pending;
+    private final int[] pendingCount;
+    private final long[] lastSentAt;
+    private final Runnable[] flushers;
+
+    private volatile long delivered = 0;
+    private volatile long coalesced = 0;
+
+    EventPublisher(Context context, Handler handler, String... actions) {
+        this.context = context;
+        this.handler = handler;
+        this.actions = actions;
+        this.pending = new Bundle[actions.length];
+        this.pendingCount = new int[actions.length];
+        this.lastSentAt = new long[actions.length];
+        this.flushers = new Runnable[actions.length];
+        for (int i = 0; i < actions.length; i++) {
+            int type = i;
+            lastSentAt[i] = -MIN_INTERVAL_MILLIS;
+            flushers[i] = () -> deliver(type);
+        }
+    }
+
+    /** Replaces the subscriber list; callable from any thread. */
+    void setSubscribers(Collection<String> packages) {
+        List<String> copy = new ArrayList<>(packages);
+        handler.post(() -> {
+            subscribers.clear();
+            subscribers.addAll(copy);
+        });
+    }
+
+    /** Turns the unaddressed broadcast on or off; callable from any thread. */
+    void setImplicit(boolean implicit) {
+        handler.post(() -> this.implicit = implicit);
+    }
+
+    /** Queues an event; callable from any thread. {@code payload} is owned by the publisher afterwards. */
+    void publish(int type, Bundle payload) {
+        handler.post(() -> enqueue(type, payload));
+    }
+
+    void dump(PrintWriter pw) {
+        pw.println("  events: delivered=" + delivered + " coalesced=" + coalesced);
+    }
+
+    private void enqueue(int type, Bundle payload) {
+        boolean scheduled = pending[type] != null;
+        pending[type] = payload;
+        pendingCount[type]++;
+        if (scheduled) {
+            coalesced++;
+            return;
+        }
+        long wait = lastSentAt[type] + MIN_INTERVAL_MILLIS - SystemClock.uptimeMillis();
+        if (wait <= 0) deliver(type);
+        else handler.postDelayed(flushers[type], wait);
+    }
+
+    private void deliver(int type) {
+        Bundle payload = pending[type];
+        if (payload == null) return;
+        payload.putInt(FloatingClockService.EXTRA_EVENT_COUNT, pendingCount[type]);
+        pending[type] = null;
+        pendingCount[type] = 0;
+        lastSentAt[type] = SystemClock.uptimeMillis();
+
+        if (implicit) {
+            context.sendBroadcast(new Intent(actions[type]).putExtras(payload));
+            delivered++;
+        }
+        for (String pkg : subscribers) {
+            context.sendBroadcast(new Intent(actions[type]).setPackage(pkg).putExtras(payload));
+            delivered++;
+        }
+    }
+}
@@ -3,161 +3,519 @@ package com.example.carclock;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
+import android.app.PendingIntent;
 import android.app.Service;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
-import android.graphics.Color;
-import android.graphics.PixelFormat;
-import android.graphics.Typeface;
-import android.graphics.drawable.Drawable;
-import android.graphics.drawable.GradientDrawable;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.hardware.display.DisplayManager;
+import android.os.Bundle;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.Parcelable;
+import android.os.Process;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.util.DisplayMetrics;
-import android.view.Gravity;
-import android.view.LayoutInflater;
-import android.view.MotionEvent;
-import android.view.View;
+import android.util.SparseArray;
+import android.view.Choreographer;
+import android.view.Display;
 import android.view.WindowManager;
-import android.widget.TextView;
 import android.widget.Toast;
 
-import androidx.core.app.NotificationCompat;
-import androidx.core.content.ContextCompat;
-
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import com.example.carclock.core.AmbientPolicy;
+import com.example.carclock.core.Clock;
+import com.example.carclock.core.ClockFields;
+import com.example.carclock.core.ClockCommands;
+import com.example.carclock.core.ClockSettings;
+import com.example.carclock.core.CommandReducer;
+import com.example.carclock.core.GestureRecognizer;
+import com.example.carclock.core.Scheduler;
+import com.example.carclock.core.StyleTable;
+import com.example.carclock.core.TickScheduler;
+import com.example.carclock.core.TimeFormatter;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
+/**
+ * Runs in its own :overlay process (see the manifest) with framework classes only, so none
+ * of the settings UI's AppCompat/Material stack is loaded next to the clock. MainActivity
+ * talks to it through {@link #onBind}'s Messenger; everything else sends intents.
+ */
 public class FloatingClockService extends Service {
 
-    public static final String ACTION_TOGGLE_VISIBILITY = "com.example.carclock.ACTION_TOGGLE_VISIBILITY";
-    public static final String ACTION_TOGGLE_PASSTHROUGH = "com.example.carclock.ACTION_TOGGLE_PASSTHROUGH";
-    public static final String ACTION_INCREASE_SIZE = "com.example.carclock.ACTION_INCREASE_SIZE";
-    public static final String ACTION_DECREASE_SIZE = "com.example.carclock.ACTION_DECREASE_SIZE";
-    public static final String ACTION_CHANGE_STYLE = "com.example.carclock.ACTION_CHANGE_STYLE";
-    public static final String ACTION_TOGGLE_SECONDS = "com.example.carclock.ACTION_TOGGLE_SECONDS";
-    public static final String ACTION_TOGGLE_BG = "com.example.carclock.ACTION_TOGGLE_BG";
-    public static final String ACTION_TOGGLE_WEIGHT = "com.example.carclock.ACTION_TOGGLE_WEIGHT";
-    public static final String ACTION_RESET_POSITION = "com.example.carclock.ACTION_RESET_POSITION";
-    public static final String ACTION_TOGGLE_ORIENTATION = "com.example.carclock.ACTION_TOGGLE_ORIENTATION";
-    public static final String ACTION_TOGGLE_TOASTS = "com.example.carclock.ACTION_TOGGLE_TOASTS";
-    public static final String ACTION_SET_VISIBLE = "com.example.carclock.ACTION_SET_VISIBLE";
-    public static final String ACTION_SET_BLOCKING = "com.example.carclock.ACTION_SET_BLOCKING";
-    public static final String ACTION_SET_OPACITY = "com.example.carclock.ACTION_SET_OPACITY";
+    public static final String ACTION_TOGGLE_VISIBILITY = ClockCommands.TOGGLE_VISIBILITY;
+    public static final String ACTION_TOGGLE_PASSTHROUGH = ClockCommands.TOGGLE_PASSTHROUGH;
+    public static final String ACTION_INCREASE_SIZE = ClockCommands.INCREASE_SIZE;
+    public static final String ACTION_DECREASE_SIZE = ClockCommands.DECREASE_SIZE;
+    public static final String ACTION_CHANGE_STYLE = ClockCommands.CHANGE_STYLE;
+    public static final String ACTION_TOGGLE_SECONDS = ClockCommands.TOGGLE_SECONDS;
+    public static final String ACTION_TOGGLE_BG = ClockCommands.TOGGLE_BG;
+    public static final String ACTION_TOGGLE_WEIGHT = ClockCommands.TOGGLE_WEIGHT;
+    public static final String ACTION_RESET_POSITION = ClockCommands.RESET_POSITION;
+    public static final String ACTION_TOGGLE_ORIENTATION = ClockCommands.TOGGLE_ORIENTATION;
+    public static final String ACTION_TOGGLE_TOASTS = ClockCommands.TOGGLE_TOASTS;
+    public static final String ACTION_SET_VISIBLE = ClockCommands.SET_VISIBLE;
+    public static final String ACTION_SET_BLOCKING = ClockCommands.SET_BLOCKING;
+    public static final String ACTION_SET_OPACITY = ClockCommands.SET_OPACITY;
+    public static final String ACTION_TOGGLE_SNAP = ClockCommands.TOGGLE_SNAP;
+    public static final String ACTION_TOGGLE_CLICK_MODE = ClockCommands.TOGGLE_CLICK_MODE;
+    public static final String ACTION_TOGGLE_DATE = ClockCommands.TOGGLE_DATE;
+    public static final String ACTION_TOGGLE_WEEKDAY = ClockCommands.TOGGLE_WEEKDAY;
+    public static final String ACTION_SET_MODE = ClockCommands.SET_MODE;
+    public static final String ACTION_TIMER_START = ClockCommands.TIMER_START;
+    public static final String ACTION_TIMER_PAUSE = ClockCommands.TIMER_PAUSE;
+    public static final String ACTION_TIMER_RESET = ClockCommands.TIMER_RESET;
+    public static final String ACTION_TIMER_SET_DURATION = ClockCommands.TIMER_SET_DURATION;
+    public static final String ACTION_TOGGLE_AUTO_STYLE = ClockCommands.TOGGLE_AUTO_STYLE;
+    public static final String ACTION_APPLY_STATE = "com.example.carclock.ACTION_APPLY_STATE";
+    public static final String ACTION_QUERY_METRICS = "com.example.carclock.ACTION_QUERY_METRICS";
+    public static final String ACTION_TOGGLE_DISPLAY = "com.example.carclock.ACTION_TOGGLE_DISPLAY";
+    public static final String ACTION_SUBSCRIBE = "com.example.carclock.ACTION_SUBSCRIBE";
+    public static final String ACTION_UNSUBSCRIBE = "com.example.carclock.ACTION_UNSUBSCRIBE";
+    public static final String ACTION_TOGGLE_IMPLICIT_EVENTS = "com.example.carclock.ACTION_TOGGLE_IMPLICIT_EVENTS";
     
     public static final String EXTRA_OPACITY = "extra_opacity"; // Int 0-100
+    public static final String EXTRA_MODE = "extra_mode"; // String clock|stopwatch|countdown, for ACTION_SET_MODE
+    public static final String EXTRA_DURATION_SECONDS = "extra_duration_seconds"; // Int, for ACTION_TIMER_SET_DURATION
+
+    // ACTION_APPLY_STATE extras; every one is optional
+    public static final String EXTRA_TEXT_SIZE = "extra_text_size"; // Float sp
+    public static final String EXTRA_STYLE_INDEX = "extra_style_index"; // Int
+    public static final String EXTRA_BG_VISIBLE = "extra_bg_visible"; // Boolean
+    public static final String EXTRA_BOLD = "extra_bold"; // Boolean
+    public static final String EXTRA_VERTICAL = "extra_vertical"; // Boolean
+    public static final String EXTRA_SHOW_SECONDS = "extra_show_seconds"; // Boolean
+    public static final String EXTRA_X = "extra_x"; // Int px
+    public static final String EXTRA_Y = "extra_y"; // Int px
+    public static final String EXTRA_VISIBLE = "extra_visible"; // Boolean
+    public static final String EXTRA_PASSTHROUGH = "extra_passthrough"; // Boolean
+    public static final String EXTRA_SHOW_DATE = "extra_show_date"; // Boolean
+    public static final String EXTRA_SHOW_WEEKDAY = "extra_show_weekday"; // Boolean
+    public static final String EXTRA_SECOND_ZONE = "extra_second_zone"; // String zone id, e.g. "Asia/Shanghai"; "" removes it
+    public static final String EXTRA_SECOND_ZONE_LABEL = "extra_second_zone_label"; // String, defaults to the zone's city
+    public static final String EXTRA_AUTO_STYLE = "extra_auto_style"; // Boolean, day/night style from the light sensor
+    public static final String EXTRA_ACTIONS = "extra_actions"; // String[] or comma-separated String, applied in order
+    public static final String EXTRA_REPLY_PACKAGE = "extra_reply_package"; // String, required: the metrics reply goes only there
+    // Int; picks the display whose clock gets size/style/position changes (default display if absent).
+    // Also put on the click broadcasts.
+    public static final String EXTRA_DISPLAY_ID = "extra_display_id";
+    // PendingIntent, for ACTION_(UN)SUBSCRIBE: the app that created it is the one (un)subscribed, so
+    // nobody can sign up or drop another package. Any PendingIntent of the caller's own will do.
+    // Subscribers declare a manifest receiver for the event actions; that also keeps them visible
+    // to the check that drops uninstalled subscribers.
+    public static final String EXTRA_CALLER = "extra_caller";
+
+    // Gesture event payload, next to EXTRA_DISPLAY_ID, EXTRA_X/Y and the ACTION_APPLY_STATE extras
+    public static final String EXTRA_EVENT_TIME = "extra_event_time"; // Long, wall clock ms of the gesture
+    public static final String EXTRA_EVENT_COUNT = "extra_event_count"; // Int, >1 if events were coalesced
     
     public static final String ACTION_BROADCAST_CLICK = "com.example.carclock.CLOCK_CLICK";
     public static final String ACTION_BROADCAST_DOUBLE_CLICK = "com.example.carclock.CLOCK_DOUBLE_CLICK";
     public static final String ACTION_BROADCAST_LONG_PRESS = "com.example.carclock.CLOCK_LONG_PRESS";
+    public static final String ACTION_METRICS_REPORT = "com.example.carclock.METRICS_REPORT";
+
+    // Messenger IPC with MainActivity. MSG_COMMAND carries KEY_ACTION in its data (and the
+    // value in arg1 for ACTION_SET_OPACITY); both messages are answered with MSG_STATE if
+    // replyTo is set.
+    static final int MSG_COMMAND = 1;
+    static final int MSG_QUERY_STATE = 2;
+    static final int MSG_STATE = 3; // data: EXTRA_OPACITY, EXTRA_PASSTHROUGH, EXTRA_SHOW_TOASTS
+    static final String KEY_ACTION = "action";
+    static final String EXTRA_SHOW_TOASTS = "extra_show_toasts"; // Boolean
+    static final String EXTRA_FROM_BOOT = "extra_from_boot"; // Boolean, set by CommandReceiver on boot
+
+    private static final String[] COMMAND_ACTIONS = {
+            ACTION_TOGGLE_VISIBILITY, ACTION_TOGGLE_PASSTHROUGH, ACTION_INCREASE_SIZE, ACTION_DECREASE_SIZE,
+            ACTION_CHANGE_STYLE, ACTION_TOGGLE_SECONDS, ACTION_TOGGLE_BG, ACTION_TOGGLE_WEIGHT,
+            ACTION_RESET_POSITION, ACTION_TOGGLE_ORIENTATION, ACTION_TOGGLE_TOASTS, ACTION_SET_VISIBLE,
+            ACTION_SET_BLOCKING, ACTION_SET_OPACITY, ACTION_TOGGLE_SNAP, ACTION_TOGGLE_CLICK_MODE,
+            ACTION_TOGGLE_DATE, ACTION_TOGGLE_WEEKDAY, ACTION_SET_MODE, ACTION_TIMER_START, ACTION_TIMER_PAUSE,
+            ACTION_TIMER_RESET, ACTION_TIMER_SET_DURATION, ACTION_TOGGLE_AUTO_STYLE, ACTION_APPLY_STATE, ACTION_QUERY_METRICS, ACTION_TOGGLE_DISPLAY, ACTION_SUBSCRIBE, ACTION_UNSUBSCRIBE,
+            ACTION_TOGGLE_IMPLICIT_EVENTS
+    };
 
-    private static final String PREFS_NAME = "CarClockPrefs";
-    private static final String KEY_X = "pos_x";
-    private static final String KEY_Y = "pos_y";
-    private static final String KEY_PASSTHROUGH = "passthrough";
-    private static final String KEY_SECONDS = "show_seconds";
-    private static final String KEY_BG_VISIBLE = "bg_visible";
-    private static final String KEY_BOLD = "is_bold";
-    private static final String KEY_VERTICAL = "is_vertical";
-    private static final String KEY_TEXT_SIZE = "text_size";
-    private static final String KEY_STYLE_INDEX = "style_index";
-    private static final String KEY_SHOW_TOASTS = "show_toasts";
-    private static final String KEY_IS_VISIBLE = "is_visible";
-    private static final String KEY_OPACITY = "bg_opacity";
-
-    private WindowManager windowManager;
-    private View floatingView;
-    private TextView tvTime;
-    private View rootContainer;
-    private WindowManager.LayoutParams params;
-
-    private boolean isPassthrough = false;
-    private boolean showSeconds = true;
-    private boolean isBgVisible = true;
-    private boolean isBold = false;
-    private boolean isVertical = false;
-    private boolean showToasts = true;
-    private boolean isVisible = true;
-    private int opacity = 100; // 0-100
-
-    private float currentTextSize = 24f;
-    private int currentStyleIndex = 0;
-    
-    private SharedPreferences prefs;
+    // One window per display, keyed by display id; primary is the default display's and uses state
+    private final SparseArray<OverlayWindow> overlays = new SparseArray<>();
+    private OverlayWindow primary;
+
+    private SettingsStore settings;
+    private final ClockSettings state = new ClockSettings();
+    private StyleTable styles;
+    private CommandReducer reducer;
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
-    private int clickCount = 0;
-    private boolean isLongPressTriggered = false;
+    // Time sources for the tick, gesture and light-sensor timers; the :core tests run those
+    // classes on a VirtualScheduler instead
+    private final Scheduler mainScheduler = new HandlerScheduler(mainHandler);
+    private final Clock clock = Clock.SYSTEM;
+    // Prefs writes, broadcasts, toasts and activity starts; the main thread is left to the views
+    private final HandlerThread ioThread = new HandlerThread("CarClock-io", Process.THREAD_PRIORITY_BACKGROUND);
+    private Handler ioHandler;
+    private EventPublisher events;
+
+    private final TimeFormatter timeFormatter = new TimeFormatter();
+    private final ClockFields fields = new ClockFields(Locale.getDefault());
+    private final ClockMetrics metrics = new ClockMetrics(COMMAND_ACTIONS);
     
-    private final Runnable updateTimeRunnable = new Runnable() {
+    private final Runnable updateTimeRunnable = () -> {
+        long start = SystemClock.elapsedRealtimeNanos();
+        renderTime();
+        metrics.tickRenderUs.record((SystemClock.elapsedRealtimeNanos() - start) / 1000);
+    };
+
+    private void renderTime() {
+        long now = clock.currentTimeMillis();
+        boolean changed;
+        if (state.mode == ClockSettings.MODE_CLOCK) {
+            changed = timeFormatter.format(now, state.showSeconds, state.vertical);
+        } else {
+            long elapsedNow = SystemClock.elapsedRealtime();
+            if (state.timerRunning && state.countdownFinished(elapsedNow)) mainHandler.post(finishCountdown);
+            changed = timeFormatter.formatDuration(state.timerDisplayMillis(elapsedNow), state.vertical);
+        }
+        // Formatted once for every display; fixed cell metrics mean only changed digits are invalidated
+        if (changed) {
+            for (int i = 0; i < overlays.size(); i++) {
+                overlays.valueAt(i).setTime(timeFormatter.buffer(), timeFormatter.length());
+            }
+        }
+        // Date and second zone only do work on their own (midnight / minute) boundaries
+        if (fields.update(now)) {
+            for (int i = 0; i < overlays.size(); i++) pushFields(overlays.valueAt(i));
+        }
+    }
+
+    private final TickScheduler tickScheduler = new TickScheduler(mainScheduler, clock, updateTimeRunnable);
+
+    // A running timer is redrawn every frame while it can be seen, and only then
+    private boolean timerFrames = false;
+    private final Choreographer.FrameCallback timerFrame = new Choreographer.FrameCallback() {
         @Override
-        public void run() {
-            if (tvTime != null) {
-                SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
-                String timeText = sdf.format(new Date());
-                if (!showSeconds) timeText = timeText.substring(0, 5);
-                if (isVertical) timeText = timeText.replace(":", "\n");
-                tvTime.setText(timeText);
+        public void doFrame(long frameTimeNanos) {
+            if (!timerFrames) return;
+            // Its own histogram: a frame every 16 ms would swamp the per-tick numbers
+            long start = SystemClock.elapsedRealtimeNanos();
+            renderTime();
+            metrics.timerFrameUs.record((SystemClock.elapsedRealtimeNanos() - start) / 1000);
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    // Stops a countdown at zero, through the reducer so it is saved like a TIMER_PAUSE command
+    private final Runnable finishCountdown = () -> {
+        if (state.timerRunning && state.countdownFinished(SystemClock.elapsedRealtime())) {
+            handleAction(primary, ACTION_TIMER_PAUSE);
+        }
+    };
+
+    // Light sensor, only while auto style is on and the clock can be seen. 1 Hz is plenty for
+    // the dwell times, and batching lets the sensor hub hold the readings instead of waking us
+    private static final int LIGHT_SAMPLING_US = 1_000_000;
+    private static final int LIGHT_MAX_LATENCY_US = 5_000_000;
+    private static final long LIGHT_BATCH_GAP_MILLIS = 100; // callbacks closer than this are one batch
+    private SensorManager sensorManager;
+    private Sensor lightSensor; // null without one
+    private boolean lightListening = false;
+    private long lastLightCallback = 0;
+    private final AmbientPolicy ambient = new AmbientPolicy(mainScheduler, this::onAmbientChanged);
+
+    private final SensorEventListener lightListener = new SensorEventListener() {
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            long now = SystemClock.uptimeMillis();
+            if (now - lastLightCallback > LIGHT_BATCH_GAP_MILLIS) metrics.onLightWakeup();
+            lastLightCallback = now;
+            // A batched reading is older than its delivery; the dwell times go by when it was measured
+            long ageMillis = (SystemClock.elapsedRealtimeNanos() - event.timestamp) / 1_000_000;
+            ambient.onReading(now - Math.max(0, ageMillis), event.values[0]);
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+    };
+
+    private final BroadcastReceiver timeChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                timeFormatter.resetZone();
+                fields.resetZone();
             }
-            mainHandler.postDelayed(this, 1000);
+            tickScheduler.resync();
         }
     };
     
-    private final Runnable singleClickRunnable = () -> {
-        clickCount = 0;
-        sendBroadcastAction(ACTION_BROADCAST_CLICK, R.string.tasker_click_sent);
+    private final BroadcastReceiver packageRemovedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (intent.getData() != null) updateSubscription(intent.getData().getSchemeSpecificPart(), false);
+        }
     };
-    
-    private final Runnable longPressRunnable = () -> {
-        isLongPressTriggered = true;
-        sendBroadcastAction(ACTION_BROADCAST_LONG_PRESS, R.string.tasker_long_press_sent);
-        openMainActivity();
+
+    // Not needed for the first frame; a hidden clock never draws, hence the timeout
+    private static final long DEFERRED_STARTUP_TIMEOUT_MILLIS = 1000;
+    private boolean deferredStartupDone = false;
+    private final Runnable deferredStartup = this::runDeferredStartup;
+
+    private DisplayManager displayManager;
+    private boolean ticking = false;
+    private boolean timeReceiverRegistered = false;
+    private final Runnable windowUpdateCounter = metrics::onWindowUpdate;
+
+    // Hot-plug: clocks follow their displays by name
+    private final DisplayManager.DisplayListener displayListener = new DisplayManager.DisplayListener() {
+        @Override
+        public void onDisplayChanged(int displayId) {
+            OverlayWindow window = overlays.get(displayId);
+            if (window == null) return;
+            boolean on = isDisplayOn(displayManager.getDisplay(displayId));
+            if (on == window.displayOn) return;
+            window.displayOn = on;
+            refreshTimeImmediately();
+        }
+
+        @Override
+        public void onDisplayAdded(int displayId) {
+            if (!deferredStartupDone) return; // attachExtraDisplays picks it up
+            Display display = displayManager.getDisplay(displayId);
+            if (display != null && settings.getDisplays().contains(display.getName())) {
+                addOverlay(display);
+                refreshTimeImmediately();
+            }
+        }
+
+        @Override
+        public void onDisplayRemoved(int displayId) {
+            OverlayWindow window = overlays.get(displayId);
+            if (window == null || window == primary) return;
+            window.detach();
+            overlays.remove(displayId);
+            refreshTimeImmediately();
+        }
     };
 
+    private final OverlayWindow.Listener overlayListener = new OverlayWindow.Listener() {
+        @Override
+        public void onClick(OverlayWindow window) {
+            publishGesture(GestureRecognizer.GESTURE_CLICK, window, R.string.tasker_click_sent);
+        }
+
+        @Override
+        public void onDoubleClick(OverlayWindow window) {
+            publishGesture(GestureRecognizer.GESTURE_DOUBLE_CLICK, window, R.string.tasker_double_click_sent);
+        }
+
+        @Override
+        public void onLongPress(OverlayWindow window) {
+            publishGesture(GestureRecognizer.GESTURE_LONG_PRESS, window, R.string.tasker_long_press_sent);
+            openMainActivity();
+        }
+
+        @Override
+        public void onMoved(OverlayWindow window) {
+            saveLayout(window);
+        }
+    };
+
+    private final CommandDispatcher.Target commandTarget = this::handleIntent;
+    // Incoming binder calls are queued on the main thread, like the in-process commands were
+    private final Messenger messenger = new Messenger(new Handler(Looper.getMainLooper(), this::handleMessage));
+
     @Override
-    public IBinder onBind(Intent intent) { return null; }
+    public IBinder onBind(Intent intent) { return messenger.getBinder(); }
+
+    private boolean handleMessage(Message msg) {
+        if (msg.what == MSG_COMMAND) {
+            String action = msg.getData().getString(KEY_ACTION);
+            if (action == null) return true;
+            metrics.countIpcCommand();
+            metrics.countCommand(action);
+            if (ACTION_SET_OPACITY.equals(action)) reducer.setOpacity(state, msg.arg1);
+            handleAction(primary, action);
+        } else if (msg.what != MSG_QUERY_STATE) {
+            return false;
+        }
+        if (msg.replyTo != null) replyState(msg.replyTo);
+        return true;
+    }
+
+    /** The shared settings MainActivity shows; its own process can't see our prefs cache. */
+    private void replyState(Messenger replyTo) {
+        Message reply = Message.obtain(null, MSG_STATE);
+        Bundle data = reply.getData();
+        data.putInt(EXTRA_OPACITY, state.opacity);
+        data.putBoolean(EXTRA_PASSTHROUGH, state.passthrough);
+        data.putBoolean(EXTRA_SHOW_TOASTS, state.showToasts);
+        try {
+            replyTo.send(reply);
+        } catch (RemoteException ignored) {} // the activity is gone
+    }
 
     @Override
     public void onCreate() {
         super.onCreate();
-        prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        loadPreferences();
+        Trace.beginSection("CarClock.onCreate");
+        metrics.onCreate();
+        ioThread.start();
+        ioHandler = new Handler(ioThread.getLooper());
+        settings = new SettingsStore(this, mainHandler, ioHandler);
+        // Indexed by GestureRecognizer.GESTURE_*
+        events = new EventPublisher(this, ioHandler,
+                ACTION_BROADCAST_CLICK, ACTION_BROADCAST_DOUBLE_CLICK, ACTION_BROADCAST_LONG_PRESS);
+        events.setSubscribers(settings.getSubscribers());
+        events.setImplicit(settings.getImplicitEvents());
+        IntentFilter removedFilter = new IntentFilter(Intent.ACTION_PACKAGE_FULLY_REMOVED);
+        removedFilter.addDataScheme("package");
+        registerReceiver(packageRemovedReceiver, removedFilter, null, mainHandler);
+        styles = StyleRegistry.load(this);
+        reducer = new CommandReducer(styles);
+        settings.load(state);
+        configureFields();
+        sensorManager = getSystemService(SensorManager.class);
+        lightSensor = sensorManager.getDefaultSensor(Sensor.TYPE_LIGHT);
+        ambient.setReportLatency(LIGHT_MAX_LATENCY_US / 1000);
+        displayManager = getSystemService(DisplayManager.class);
+        displayManager.registerDisplayListener(displayListener, mainHandler);
+        primary = addOverlay(displayManager.getDisplay(Display.DEFAULT_DISPLAY));
+        refreshTimeImmediately();
+        CommandDispatcher.register(mainHandler, commandTarget);
+        metrics.attach(tickScheduler, primary.getLayoutPassCounter(), primary.getDragController(), settings, ambient);
+        mainHandler.postDelayed(deferredStartup, DEFERRED_STARTUP_TIMEOUT_MILLIS);
+        Trace.endSection();
+    }
+
+    private void onFirstFrame() {
+        metrics.onFirstFrame();
+        mainHandler.removeCallbacks(deferredStartup);
+        mainHandler.post(deferredStartup);
+    }
+
+    /** Foreground notification, time-change receiver and extra displays, once after the first frame. */
+    private void runDeferredStartup() {
+        if (deferredStartupDone) return;
+        deferredStartupDone = true;
         startForegroundService();
-        initializeFloatingWindow();
+        attachExtraDisplays();
+        refreshTimeImmediately();
+        dropUninstalledSubscribers();
+        ioHandler.post(metrics::sampleMemory);
+    }
+
+    // Removals while the service was not running are never broadcast to us again
+    private void dropUninstalledSubscribers() {
+        List<String> packages = new ArrayList<>(settings.getSubscribers());
+        if (packages.isEmpty()) return;
+        ioHandler.post(() -> {
+            PackageManager pm = getPackageManager();
+            for (String pkg : packages) {
+                try {
+                    pm.getApplicationInfo(pkg, 0);
+                } catch (PackageManager.NameNotFoundException e) {
+                    mainHandler.post(() -> updateSubscription(pkg, false));
+                }
+            }
+        });
+    }
+
+    // TIME_TICK alone wakes the process every minute, so it goes away with the tick
+    private void updateTimeReceiver() {
+        boolean wanted = deferredStartupDone && ticking;
+        if (wanted == timeReceiverRegistered) return;
+        if (wanted) {
+            IntentFilter timeFilter = new IntentFilter(Intent.ACTION_TIME_TICK);
+            timeFilter.addAction(Intent.ACTION_TIME_CHANGED);
+            timeFilter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+            registerReceiver(timeChangeReceiver, timeFilter);
+        } else {
+            unregisterReceiver(timeChangeReceiver);
+        }
+        timeReceiverRegistered = wanted;
+    }
+
+    // Doze and suspend states count as off: nothing on screen is updated there
+    private static boolean isDisplayOn(Display display) {
+        return display == null || display.getState() == Display.STATE_ON || display.getState() == Display.STATE_VR;
+    }
+
+    private void attachExtraDisplays() {
+        for (Display display : displayManager.getDisplays()) {
+            if (overlays.get(display.getDisplayId()) != null) continue;
+            if (settings.getDisplays().contains(display.getName())) addOverlay(display);
+        }
     }
 
-    private void loadPreferences() {
-        showToasts = prefs.getBoolean(KEY_SHOW_TOASTS, true);
-        isPassthrough = prefs.getBoolean(KEY_PASSTHROUGH, false);
-        showSeconds = prefs.getBoolean(KEY_SECONDS, true);
-        isBgVisible = prefs.getBoolean(KEY_BG_VISIBLE, true);
-        isBold = prefs.getBoolean(KEY_BOLD, false);
-        isVertical = prefs.getBoolean(KEY_VERTICAL, false);
-        currentTextSize = prefs.getFloat(KEY_TEXT_SIZE, 24f);
-        currentStyleIndex = prefs.getInt(KEY_STYLE_INDEX, 0);
-        isVisible = prefs.getBoolean(KEY_IS_VISIBLE, true);
-        opacity = prefs.getInt(KEY_OPACITY, 100);
+    // createWindowContext(Display, ...) is API 31; on 30 the display comes from createDisplayContext
+    private Context windowContext(Display display) {
+        int type = WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) return createWindowContext(display, type, null);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) return createDisplayContext(display).createWindowContext(type, null);
+        return createDisplayContext(display);
     }
 
-    private void savePosition(int x, int y) {
-        prefs.edit().putInt(KEY_X, x).putInt(KEY_Y, y).apply();
+    /**
+     * Creates and attaches the clock for {@code display}. Secondary displays start from
+     * their saved layout (or the centre) and take the shared settings from {@link #state}.
+     */
+    private OverlayWindow addOverlay(Display display) {
+        boolean isPrimary = display.getDisplayId() == Display.DEFAULT_DISPLAY;
+        Context context = isPrimary ? this : windowContext(display);
+        DisplayMetrics size = context.getResources().getDisplayMetrics();
+        ClockSettings windowState = isPrimary ? state : new ClockSettings();
+        if (isPrimary) {
+            state.x = settings.getX((size.widthPixels / 2) - 100);
+            state.y = settings.getY((size.heightPixels / 2) - 50);
+        } else {
+            windowState.copyFrom(state);
+            if (!settings.loadDisplay(display.getName(), windowState)) {
+                windowState.x = (size.widthPixels / 2) - 100;
+                windowState.y = (size.heightPixels / 2) - 50;
+            }
+        }
+        OverlayWindow window = new OverlayWindow(context, display.getDisplayId(), display.getName(),
+                windowState, mainScheduler, overlayListener);
+        window.displayOn = isDisplayOn(display);
+        window.attach(styles, metrics.drawUs, isPrimary ? this::onFirstFrame : null);
+        if (timeFormatter.length() > 0) window.setTime(timeFormatter.buffer(), timeFormatter.length());
+        pushFields(window);
+        overlays.put(display.getDisplayId(), window);
+        return window;
     }
 
-    private void saveAllSettings() {
-        prefs.edit()
-            .putBoolean(KEY_PASSTHROUGH, isPassthrough)
-            .putBoolean(KEY_SECONDS, showSeconds)
-            .putBoolean(KEY_BG_VISIBLE, isBgVisible)
-            .putBoolean(KEY_BOLD, isBold)
-            .putBoolean(KEY_VERTICAL, isVertical)
-            .putFloat(KEY_TEXT_SIZE, currentTextSize)
-            .putInt(KEY_STYLE_INDEX, currentStyleIndex)
-            .putBoolean(KEY_IS_VISIBLE, isVisible)
-            .putInt(KEY_OPACITY, opacity)
-            .apply();
+    /** ACTION_TOGGLE_DISPLAY: adds or removes the clock on a secondary display, remembered by name. */
+    private void toggleDisplay(int displayId) {
+        Display display = displayManager.getDisplay(displayId);
+        if (display == null || displayId == Display.DEFAULT_DISPLAY) return;
+        OverlayWindow window = overlays.get(displayId);
+        if (window != null) {
+            window.detach();
+            overlays.remove(displayId);
+            settings.setDisplayEnabled(window.displayKey, false);
+        } else {
+            settings.setDisplayEnabled(display.getName(), true);
+            saveLayout(addOverlay(display));
+        }
+        refreshTimeImmediately();
+    }
+
+    private void saveLayout(OverlayWindow window) {
+        if (window == primary) settings.setPosition(window.state.x, window.state.y);
+        else settings.saveDisplay(window.displayKey, window.state);
     }
 
     private void startForegroundService() {
@@ -167,7 +525,8 @@ public class FloatingClockService extends Service {
                     channelId, "Floating Clock", NotificationManager.IMPORTANCE_LOW);
             getSystemService(NotificationManager.class).createNotificationChannel(channel);
         }
-        Notification notification = new NotificationCompat.Builder(this, channelId)
+        // Framework builder: NotificationCompat would pull androidx into this process
+        Notification notification = new Notification.Builder(this, channelId)
                 .setContentTitle("Car Floating Clock")
                 .setContentText("Clock is running")
                 .setSmallIcon(R.mipmap.ic_launcher)
@@ -175,214 +534,297 @@ public class FloatingClockService extends Service {
         startForeground(1, notification);
     }
 
-    private void initializeFloatingWindow() {
-        windowManager = (WindowManager) getSystemService(WINDOW_SERVICE);
-        floatingView = LayoutInflater.from(this).inflate(R.layout.layout_floating_clock, null);
-        tvTime = floatingView.findViewById(R.id.tv_clock_time);
-        rootContainer = floatingView.findViewById(R.id.root_container);
-
-        int layoutFlag = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O 
-                ? WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY 
-                : WindowManager.LayoutParams.TYPE_PHONE;
-
-        int flags = WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE | 
-                    WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS |
-                    WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN;
-        
-        if (isPassthrough) flags |= WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
-
-        params = new WindowManager.LayoutParams(
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                WindowManager.LayoutParams.WRAP_CONTENT,
-                layoutFlag, flags, PixelFormat.TRANSLUCENT
-        );
-
-        params.gravity = Gravity.TOP | Gravity.START;
-        
-        DisplayMetrics metrics = getResources().getDisplayMetrics();
-        params.x = prefs.getInt(KEY_X, (metrics.widthPixels / 2) - 100);
-        params.y = prefs.getInt(KEY_Y, (metrics.heightPixels / 2) - 50);
-
-        tvTime.setTextSize(currentTextSize);
-        tvTime.setTypeface(null, isBold ? Typeface.BOLD : Typeface.NORMAL);
-        applyStyle(currentStyleIndex);
-        rootContainer.setAlpha(opacity / 100f);
-        
-        if (!isVisible) floatingView.setVisibility(View.GONE);
-
-        windowManager.addView(floatingView, params);
-        mainHandler.post(updateTimeRunnable);
-        setupTouchListener();
-    }
-
-    private void resetPositionToCenter() {
-        if (floatingView == null) return;
-        DisplayMetrics metrics = getResources().getDisplayMetrics();
-        params.x = (metrics.widthPixels - floatingView.getWidth()) / 2;
-        params.y = (metrics.heightPixels - floatingView.getHeight()) / 2;
-        try {
-            windowManager.updateViewLayout(floatingView, params);
-            savePosition(params.x, params.y);
-        } catch (Exception ignored) {}
-    }
-
-    private void setupTouchListener() {
-        floatingView.setOnTouchListener(new View.OnTouchListener() {
-            private int initialX, initialY;
-            private float initialTouchX, initialTouchY;
-            private static final int THRESHOLD = 15;
-
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                if (isPassthrough) return false; 
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-                        initialX = params.x; initialY = params.y;
-                        initialTouchX = event.getRawX(); initialTouchY = event.getRawY();
-                        isLongPressTriggered = false;
-                        mainHandler.postDelayed(longPressRunnable, 800);
-                        return true;
-                    case MotionEvent.ACTION_MOVE:
-                        float dx = Math.abs(event.getRawX() - initialTouchX);
-                        float dy = Math.abs(event.getRawY() - initialTouchY);
-                        if (dx > THRESHOLD || dy > THRESHOLD) {
-                            mainHandler.removeCallbacks(longPressRunnable);
-                            if (!isLongPressTriggered) {
-                                params.x = initialX + (int) (event.getRawX() - initialTouchX);
-                                params.y = initialY + (int) (event.getRawY() - initialTouchY);
-                                windowManager.updateViewLayout(floatingView, params);
-                            }
-                        }
-                        return true;
-                    case MotionEvent.ACTION_UP:
-                        mainHandler.removeCallbacks(longPressRunnable);
-                        if (!isLongPressTriggered) {
-                            float udx = Math.abs(event.getRawX() - initialTouchX);
-                            float udy = Math.abs(event.getRawY() - initialTouchY);
-                            if (udx < THRESHOLD && udy < THRESHOLD) {
-                                clickCount++;
-                                if (clickCount == 1) mainHandler.postDelayed(singleClickRunnable, 300);
-                                else if (clickCount == 2) {
-                                    mainHandler.removeCallbacks(singleClickRunnable);
-                                    clickCount = 0;
-                                    sendBroadcastAction(ACTION_BROADCAST_DOUBLE_CLICK, R.string.tasker_double_click_sent);
-                                }
-                            } else {
-                                savePosition(params.x, params.y);
-                            }
-                        }
-                        return true;
-                }
-                return false;
-            }
-        });
+
+    /** Where and when the gesture happened plus the window's state, in ACTION_APPLY_STATE form. */
+    private void publishGesture(int gesture, OverlayWindow window, int toastResId) {
+        metrics.gestureLatencyMs[gesture].record(window.getLastGestureLatencyMillis());
+        ClockSettings s = window.state;
+        Bundle payload = new Bundle();
+        payload.putLong(EXTRA_EVENT_TIME, System.currentTimeMillis());
+        payload.putInt(EXTRA_DISPLAY_ID, window.displayId);
+        payload.putInt(EXTRA_X, s.x);
+        payload.putInt(EXTRA_Y, s.y);
+        payload.putFloat(EXTRA_TEXT_SIZE, s.textSize);
+        payload.putInt(EXTRA_STYLE_INDEX, s.styleIndex);
+        payload.putBoolean(EXTRA_BG_VISIBLE, s.bgVisible);
+        payload.putBoolean(EXTRA_BOLD, s.bold);
+        payload.putBoolean(EXTRA_VERTICAL, s.vertical);
+        payload.putBoolean(EXTRA_SHOW_SECONDS, s.showSeconds);
+        payload.putInt(EXTRA_OPACITY, s.opacity);
+        payload.putBoolean(EXTRA_VISIBLE, s.visible);
+        payload.putBoolean(EXTRA_PASSTHROUGH, s.passthrough);
+        payload.putBoolean(EXTRA_SHOW_DATE, s.showDate);
+        payload.putBoolean(EXTRA_SHOW_WEEKDAY, s.showWeekday);
+        payload.putString(EXTRA_SECOND_ZONE, s.secondZone);
+        payload.putString(EXTRA_SECOND_ZONE_LABEL, s.secondZoneLabel);
+        events.publish(gesture, payload);
+        if (state.showToasts) ioHandler.post(() -> Toast.makeText(this, toastResId, Toast.LENGTH_SHORT).show());
     }
 
-    private void sendBroadcastAction(String action, int toastResId) {
-        sendBroadcast(new Intent(action));
-        if (showToasts) Toast.makeText(this, toastResId, Toast.LENGTH_SHORT).show();
+    /** ACTION_SUBSCRIBE / ACTION_UNSUBSCRIBE: gesture events go to subscribed packages only. */
+    private void updateSubscription(String pkg, boolean subscribe) {
+        if (pkg == null || pkg.isEmpty() || settings.getSubscribers().contains(pkg) == subscribe) return;
+        settings.setSubscribed(pkg, subscribe);
+        events.setSubscribers(settings.getSubscribers());
+    }
+
+    /** The package that created EXTRA_CALLER; unlike a package name in the extras, it cannot be forged. */
+    private static String callerPackage(Intent intent) {
+        Parcelable caller = intent.getParcelableExtra(EXTRA_CALLER);
+        return caller instanceof PendingIntent ? ((PendingIntent) caller).getCreatorPackage() : null;
     }
     
     private void openMainActivity() {
-        Intent intent = new Intent(this, MainActivity.class);
+        // By name: a MainActivity.class literal would load AppCompatActivity into this process
+        Intent intent = new Intent().setClassName(this, "com.example.carclock.MainActivity");
         intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
-        startActivity(intent);
+        ioHandler.post(() -> startActivity(intent));
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && intent.getBooleanExtra(EXTRA_FROM_BOOT, false)) metrics.onBootStart();
         if (intent != null && intent.getAction() != null) {
-            if (ACTION_SET_OPACITY.equals(intent.getAction())) {
-                opacity = intent.getIntExtra(EXTRA_OPACITY, opacity);
-            }
-            handleAction(intent.getAction());
+            metrics.countIntentCommand();
+            CommandDispatcher.recordServicePath(intent);
+            handleIntent(intent);
         }
         return START_STICKY;
     }
-    
-    private void handleAction(String action) {
-        if (floatingView == null) return;
-        switch (action) {
-            case ACTION_TOGGLE_VISIBILITY: toggleVisibility(); break;
-            case ACTION_TOGGLE_PASSTHROUGH: togglePassthrough(); break;
-            case ACTION_INCREASE_SIZE: changeSize(5f); break;
-            case ACTION_DECREASE_SIZE: changeSize(-5f); break;
-            case ACTION_CHANGE_STYLE: cycleStyle(); break;
-            case ACTION_TOGGLE_SECONDS: showSeconds = !showSeconds; break;
-            case ACTION_TOGGLE_BG: isBgVisible = !isBgVisible; applyStyle(currentStyleIndex); break;
-            case ACTION_TOGGLE_WEIGHT: isBold = !isBold; tvTime.setTypeface(null, isBold ? Typeface.BOLD : Typeface.NORMAL); break;
-            case ACTION_RESET_POSITION: resetPositionToCenter(); break;
-            case ACTION_TOGGLE_ORIENTATION: isVertical = !isVertical; break;
-            case ACTION_TOGGLE_TOASTS:
-                showToasts = !showToasts;
-                prefs.edit().putBoolean(KEY_SHOW_TOASTS, showToasts).apply();
-                Toast.makeText(this, "Tips: " + (showToasts ? "ON" : "OFF"), Toast.LENGTH_SHORT).show();
-                break;
-            case ACTION_SET_VISIBLE: isVisible = true; floatingView.setVisibility(View.VISIBLE); break;
-            case ACTION_SET_BLOCKING:
-                isPassthrough = false;
-                params.flags &= ~WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
-                windowManager.updateViewLayout(floatingView, params);
-                break;
-            case ACTION_SET_OPACITY:
-                rootContainer.setAlpha(opacity / 100f);
-                break;
-        }
-        saveAllSettings();
-        refreshTimeImmediately();
+
+    private void handleIntent(Intent intent) {
+        String action = intent.getAction();
+        metrics.countCommand(action);
+        if (ACTION_QUERY_METRICS.equals(action)) {
+            sendMetricsReport(intent.getStringExtra(EXTRA_REPLY_PACKAGE));
+            return;
+        }
+        if (ACTION_SUBSCRIBE.equals(action) || ACTION_UNSUBSCRIBE.equals(action)) {
+            updateSubscription(callerPackage(intent), ACTION_SUBSCRIBE.equals(action));
+            return;
+        }
+        if (ACTION_TOGGLE_IMPLICIT_EVENTS.equals(action)) {
+            settings.setImplicitEvents(!settings.getImplicitEvents());
+            events.setImplicit(settings.getImplicitEvents());
+            return;
+        }
+        if (ACTION_TOGGLE_DISPLAY.equals(action)) {
+            toggleDisplay(intent.getIntExtra(EXTRA_DISPLAY_ID, Display.INVALID_DISPLAY));
+            return;
+        }
+        OverlayWindow target = overlays.get(intent.getIntExtra(EXTRA_DISPLAY_ID, Display.DEFAULT_DISPLAY), primary);
+        if (ACTION_APPLY_STATE.equals(action)) {
+            applyState(target, intent);
+            return;
+        }
+        if (ACTION_SET_OPACITY.equals(action)) {
+            reducer.setOpacity(state, intent.getIntExtra(EXTRA_OPACITY, state.opacity));
+        } else if (ACTION_SET_MODE.equals(action)) {
+            reducer.setMode(state, intent.getStringExtra(EXTRA_MODE));
+        } else if (ACTION_TIMER_SET_DURATION.equals(action)) {
+            reducer.setCountdown(state, intent.getIntExtra(EXTRA_DURATION_SECONDS, (int) (state.countdownMillis / 1000)) * 1000L);
+        }
+        handleAction(target, action);
     }
     
-    private void refreshTimeImmediately() {
-        mainHandler.removeCallbacks(updateTimeRunnable);
-        mainHandler.post(updateTimeRunnable);
+    private void handleAction(OverlayWindow target, String action) {
+        if (target == null) return;
+        target.state.copySharedFrom(state);
+        updateState(target, action);
+        state.copySharedFrom(target.state);
+        if (ACTION_TOGGLE_TOASTS.equals(action)) {
+            String text = "Tips: " + (state.showToasts ? "ON" : "OFF");
+            ioHandler.post(() -> Toast.makeText(this, text, Toast.LENGTH_SHORT).show());
+        }
+        commitState();
     }
 
-    private void toggleVisibility() {
-        isVisible = (floatingView.getVisibility() != View.VISIBLE);
-        floatingView.setVisibility(isVisible ? View.VISIBLE : View.GONE);
+    /**
+     * ACTION_APPLY_STATE: absolute values first, then the ordered EXTRA_ACTIONS list, all
+     * applied to the state before a single view/window update, save and time refresh.
+     */
+    private void applyState(OverlayWindow target, Intent intent) {
+        if (target == null) return;
+        ClockSettings s = target.state;
+        s.copySharedFrom(state);
+
+        if (intent.hasExtra(EXTRA_TEXT_SIZE)) reducer.setTextSize(s, intent.getFloatExtra(EXTRA_TEXT_SIZE, s.textSize));
+        if (intent.hasExtra(EXTRA_STYLE_INDEX)) reducer.setStyleIndex(s, intent.getIntExtra(EXTRA_STYLE_INDEX, s.styleIndex));
+        if (intent.hasExtra(EXTRA_BG_VISIBLE)) s.bgVisible = intent.getBooleanExtra(EXTRA_BG_VISIBLE, s.bgVisible);
+        if (intent.hasExtra(EXTRA_BOLD)) s.bold = intent.getBooleanExtra(EXTRA_BOLD, s.bold);
+        if (intent.hasExtra(EXTRA_VERTICAL)) s.vertical = intent.getBooleanExtra(EXTRA_VERTICAL, s.vertical);
+        if (intent.hasExtra(EXTRA_SHOW_SECONDS)) s.showSeconds = intent.getBooleanExtra(EXTRA_SHOW_SECONDS, s.showSeconds);
+        if (intent.hasExtra(EXTRA_OPACITY)) reducer.setOpacity(s, intent.getIntExtra(EXTRA_OPACITY, s.opacity));
+        if (intent.hasExtra(EXTRA_X)) s.x = intent.getIntExtra(EXTRA_X, s.x);
+        if (intent.hasExtra(EXTRA_Y)) s.y = intent.getIntExtra(EXTRA_Y, s.y);
+        if (intent.hasExtra(EXTRA_VISIBLE)) s.visible = intent.getBooleanExtra(EXTRA_VISIBLE, s.visible);
+        if (intent.hasExtra(EXTRA_PASSTHROUGH)) s.passthrough = intent.getBooleanExtra(EXTRA_PASSTHROUGH, s.passthrough);
+        if (intent.hasExtra(EXTRA_SHOW_DATE)) s.showDate = intent.getBooleanExtra(EXTRA_SHOW_DATE, s.showDate);
+        if (intent.hasExtra(EXTRA_SHOW_WEEKDAY)) s.showWeekday = intent.getBooleanExtra(EXTRA_SHOW_WEEKDAY, s.showWeekday);
+        if (intent.hasExtra(EXTRA_MODE)) reducer.setMode(s, intent.getStringExtra(EXTRA_MODE));
+        if (intent.hasExtra(EXTRA_DURATION_SECONDS)) reducer.setCountdown(s, intent.getIntExtra(EXTRA_DURATION_SECONDS, 0) * 1000L);
+        if (intent.hasExtra(EXTRA_AUTO_STYLE)) s.autoStyle = intent.getBooleanExtra(EXTRA_AUTO_STYLE, s.autoStyle);
+        if (intent.hasExtra(EXTRA_SECOND_ZONE) || intent.hasExtra(EXTRA_SECOND_ZONE_LABEL)) {
+            reducer.setSecondZone(s, intent.hasExtra(EXTRA_SECOND_ZONE) ? intent.getStringExtra(EXTRA_SECOND_ZONE) : s.secondZone,
+                    intent.hasExtra(EXTRA_SECOND_ZONE_LABEL) ? intent.getStringExtra(EXTRA_SECOND_ZONE_LABEL) : s.secondZoneLabel);
+        }
+
+        // Accept a real string array (am --esa) or a comma-separated string (Tasker)
+        String[] actions = intent.getStringArrayExtra(EXTRA_ACTIONS);
+        if (actions == null && intent.getStringExtra(EXTRA_ACTIONS) != null) {
+            actions = intent.getStringExtra(EXTRA_ACTIONS).split(",");
+        }
+        if (actions != null) {
+            for (String action : actions) updateState(target, action.trim());
+        }
+        state.copySharedFrom(s);
+        commitState();
     }
 
-    private void togglePassthrough() {
-        isPassthrough = !isPassthrough;
-        if (isPassthrough) params.flags |= WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
-        else params.flags &= ~WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
-        windowManager.updateViewLayout(floatingView, params);
+    /** Applies one command to the target's state only; commitState pushes the result out. */
+    private void updateState(OverlayWindow target, String action) {
+        if (ACTION_RESET_POSITION.equals(action)) {
+            DisplayMetrics display = target.getDisplayMetrics();
+            reducer.setViewport(display.widthPixels, display.heightPixels, target.getWidth(), target.getHeight());
+        }
+        reducer.setElapsedRealtime(SystemClock.elapsedRealtime());
+        reducer.apply(target.state, action);
     }
 
-    private void changeSize(float delta) {
-        currentTextSize += delta;
-        if (currentTextSize < 12) currentTextSize = 12;
-        tvTime.setTextSize(currentTextSize);
+    /**
+     * Reconciles every window with the new state: each applies only what differs from what
+     * it shows, and only those changes are saved or restart the tick. A no-op command
+     * (SET_BLOCKING while blocking, say) ends here without touching a view, prefs or the tick.
+     */
+    private void commitState() {
+        int changes = 0;
+        for (int i = 0; i < overlays.size(); i++) {
+            OverlayWindow window = overlays.valueAt(i);
+            window.state.copySharedFrom(state);
+            int windowChanges = window.apply(styles, windowUpdateCounter);
+            if ((windowChanges & ClockSettings.CHANGED_LAYOUT) != 0) saveLayout(window);
+            changes |= window == primary ? windowChanges : windowChanges & ClockSettings.CHANGED_SHARED;
+        }
+        if (changes == 0) return;
+        settings.save(state); // also holds the primary clock's size and style
+        if ((changes & ClockSettings.CHANGED_FIELDS) != 0) configureFields();
+        // Only these change the text or whether the clock ticks at all
+        if ((changes & (ClockSettings.CHANGED_FORMAT | ClockSettings.CHANGED_VISIBLE | ClockSettings.CHANGED_FIELDS
+                | ClockSettings.CHANGED_MODE | ClockSettings.CHANGED_TIMER | ClockSettings.CHANGED_AUTO_STYLE)) != 0) {
+            refreshTimeImmediately();
+        }
     }
 
-    private void cycleStyle() {
-        currentStyleIndex = (currentStyleIndex + 1) % 4;
-        applyStyle(currentStyleIndex);
+    /** A changed field set is formatted and pushed by the tick that refreshTimeImmediately starts. */
+    private void configureFields() {
+        fields.configure(state.showDate, state.showWeekday, state.secondZone, state.secondZoneLabel);
     }
 
-    private void applyStyle(int index) {
-        if (!isBgVisible) {
-            rootContainer.setBackground(null);
-            tvTime.setTextColor(index == 1 ? Color.BLACK : (index == 3 ? Color.GREEN : Color.WHITE));
-            return;
-        }
-        Drawable bg = ContextCompat.getDrawable(this, R.drawable.bg_clock_rounded).mutate();
-        rootContainer.setBackground(bg);
-        if (bg instanceof GradientDrawable) {
-            GradientDrawable g = (GradientDrawable) bg;
-            switch (index) {
-                case 0: g.setColor(Color.parseColor("#99000000")); tvTime.setTextColor(Color.WHITE); break;
-                case 1: g.setColor(Color.parseColor("#99FFFFFF")); tvTime.setTextColor(Color.BLACK); break;
-                case 2: g.setColor(Color.parseColor("#FF2196F3")); tvTime.setTextColor(Color.WHITE); break;
-                case 3: g.setColor(Color.parseColor("#FF000000")); g.setStroke(2, Color.GREEN); tvTime.setTextColor(Color.GREEN); break;
+    private void pushFields(OverlayWindow window) {
+        window.setInfo(fields.text(ClockFields.FIELD_DATE), fields.text(ClockFields.FIELD_WEEKDAY),
+                fields.text(ClockFields.FIELD_ZONE));
+    }
+    
+    /**
+     * Renders now and keeps ticking while the clock can be seen; with the overlay hidden
+     * or the display off the tick, time broadcasts and light sensor are dropped until it
+     * comes back. A visibly running timer is drawn on every frame on top of the tick.
+     */
+    private void refreshTimeImmediately() {
+        boolean wasTicking = ticking;
+        ticking = state.visible && anyDisplayOn();
+        if (ticking) {
+            // A zone change may have been missed while the receiver was off
+            if (!wasTicking) {
+                timeFormatter.resetZone();
+                fields.resetZone();
             }
+            // Hidden seconds only need a wakeup per minute; so does a timer (frames or a static reading) and its fields
+            boolean seconds = state.mode == ClockSettings.MODE_CLOCK && state.showSeconds;
+            tickScheduler.start(seconds ? TickScheduler.PERIOD_SECOND : TickScheduler.PERIOD_MINUTE);
+        } else if (wasTicking) {
+            tickScheduler.stop();
         }
+        setTimerFrames(ticking && state.mode != ClockSettings.MODE_CLOCK && state.timerRunning);
+        updateTimeReceiver();
+        updateLightSensor();
+    }
+
+    // A hidden clock has nothing to restyle, so the sensor goes with the tick
+    private void updateLightSensor() {
+        boolean wanted = ticking && state.autoStyle && lightSensor != null;
+        if (wanted == lightListening) return;
+        if (wanted) {
+            sensorManager.registerListener(lightListener, lightSensor, LIGHT_SAMPLING_US, LIGHT_MAX_LATENCY_US, mainHandler);
+        } else {
+            sensorManager.unregisterListener(lightListener);
+            ambient.stop();
+        }
+        lightListening = wanted;
+    }
+
+    // Only what is shown follows the light; commitState hands the level to every display
+    private void onAmbientChanged() {
+        reducer.setAmbient(state, ambient.level());
+        commitState();
+    }
+
+    private void setTimerFrames(boolean on) {
+        if (on == timerFrames) return;
+        timerFrames = on;
+        if (on) Choreographer.getInstance().postFrameCallback(timerFrame);
+        else Choreographer.getInstance().removeFrameCallback(timerFrame);
+    }
+
+    private boolean anyDisplayOn() {
+        for (int i = 0; i < overlays.size(); i++) {
+            if (overlays.valueAt(i).displayOn) return true;
+        }
+        return false;
+    }
+
+    private void sendMetricsReport(String replyPackage) {
+        // Never unaddressed: the report shows how and how often the clock is used
+        if (replyPackage == null || replyPackage.isEmpty()) return;
+        Intent report = new Intent(ACTION_METRICS_REPORT).setPackage(replyPackage);
+        Bundle stats = metrics.toBundle();
+        ioHandler.post(() -> {
+            stats.putAll(metrics.sampleMemory()); // Debug.getMemoryInfo takes a while, keep it off the main thread
+            report.putExtras(stats);
+            sendBroadcast(report);
+        });
+    }
+
+    // adb shell dumpsys activity service com.example.carclock/.FloatingClockService
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        metrics.dump(writer);
+        events.dump(writer);
+        ioHandler.post(metrics::sampleMemory); // for the next dump
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        settings.flush();
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (floatingView != null) windowManager.removeView(floatingView);
-        mainHandler.removeCallbacks(updateTimeRunnable);
+        CommandDispatcher.unregister(commandTarget);
+        settings.flush();
+        ioThread.quitSafely(); // the final prefs commit and queued broadcasts still run
+        mainHandler.removeCallbacks(deferredStartup);
+        displayManager.unregisterDisplayListener(displayListener);
+        if (timeReceiverRegistered) unregisterReceiver(timeChangeReceiver);
+        unregisterReceiver(packageRemovedReceiver);
+        for (int i = 0; i < overlays.size(); i++) overlays.valueAt(i).detach();
+        overlays.clear();
+        tickScheduler.stop();
+        setTimerFrames(false);
+        mainHandler.removeCallbacks(finishCountdown);
+        if (lightListening) sensorManager.unregisterListener(lightListener);
+        ambient.stop();
     }
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.example.carclock;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.example.carclock.core.Scheduler;
+
+/** {@link Scheduler} on an Android Handler, with SystemClock.uptimeMillis as the time base. */
+final class HandlerScheduler implements Scheduler {
+
+    private final Handler handler;
+
+    HandlerScheduler(Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public long uptimeMillis() { return SystemClock.uptimeMillis(); }
+
+    @Override
+    public void post(Runnable task) { handler.post(task); }
+
+    @Override
+    public void postAtTime(Runnable task, long uptimeMillis) { handler.postAtTime(task, uptimeMillis); }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMillis) { handler.postDelayed(task, delayMillis); }
+
+    @Override
+    public void remove(Runnable task) { handler.removeCallbacks(task); }
+}
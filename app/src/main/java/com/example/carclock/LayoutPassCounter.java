@@ -0,0 +1,42 @@
+package com.example.carclock;
+
+import android.os.SystemClock;
+import android.view.ViewTreeObserver;
+
+/**
+ * Counts layout passes of the overlay's view tree, bucketed per minute, so it can be
+ * checked that clock ticks only invalidate and never relayout.
+ */
+final class LayoutPassCounter implements ViewTreeObserver.OnGlobalLayoutListener {
+
+    private static final long MINUTE_MILLIS = 60_000L;
+
+    private long totalPasses = 0;
+    private int passesThisMinute = 0;
+    private int passesLastMinute = 0;
+    private long minuteStart = SystemClock.elapsedRealtime();
+
+    @Override
+    public void onGlobalLayout() {
+        roll();
+        totalPasses++;
+        passesThisMinute++;
+    }
+
+    long getTotalPasses() { return totalPasses; }
+
+    /** Layout passes during the last complete minute. */
+    int getPassesLastMinute() {
+        roll();
+        return passesLastMinute;
+    }
+
+    private void roll() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - minuteStart < MINUTE_MILLIS) return;
+        // A gap of more than a minute means the previous full minute had no passes at all
+        passesLastMinute = now - minuteStart < 2 * MINUTE_MILLIS ? passesThisMinute : 0;
+        passesThisMinute = 0;
+        minuteStart = now - (now - minuteStart) % MINUTE_MILLIS;
+    }
+}
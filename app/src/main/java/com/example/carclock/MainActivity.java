@@ -2,12 +2,19 @@ package com.example.carclock;
 
 import android.content.ClipData;
 import android.content.ClipboardManager;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.content.ServiceConnection;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
 import android.provider.Settings;
 import android.widget.Button;
 import android.widget.SeekBar;
@@ -16,15 +23,48 @@ import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.carclock.core.FrameCoalescer;
+
 public class MainActivity extends AppCompatActivity {
 
     private static final int OVERLAY_PERMISSION_REQ_CODE = 1234;
-    private static final String PREFS_NAME = "CarClockPrefs";
-    private static final String KEY_SHOW_TOASTS = "show_toasts";
-    private static final String KEY_OPACITY = "bg_opacity";
     
     private TextView tvStatus;
+    private SeekBar sbOpacity;
     private boolean isPassthrough = false;
+    private boolean showToasts = true;
+
+    // Bound while the service is running; commands then skip the startService round trip.
+    // The service lives in the :overlay process, so this is a Messenger, not a local binder.
+    private Messenger clockService;
+    private final Messenger replyMessenger = new Messenger(new Handler(Looper.getMainLooper(), this::onServiceReply));
+    private final FrameCoalescer pendingOpacity = new FrameCoalescer();
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            clockService = new Messenger(service);
+            // The service owns the settings; it answers with the current values
+            send(FloatingClockService.MSG_QUERY_STATE, null, 0);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            clockService = null;
+        }
+    };
+
+    // Slider events arrive faster than frames; only the latest value per frame is sent
+    private final Runnable opacityFrameRunnable = () -> {
+        int value = pendingOpacity.take();
+        if (value == FrameCoalescer.NONE) return;
+        if (!send(FloatingClockService.MSG_COMMAND, FloatingClockService.ACTION_SET_OPACITY, value)) {
+            Intent intent = new Intent(this, FloatingClockService.class);
+            intent.setAction(FloatingClockService.ACTION_SET_OPACITY);
+            intent.putExtra(FloatingClockService.EXTRA_OPACITY, value);
+            startService(intent);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -41,6 +81,22 @@ public class MainActivity extends AppCompatActivity {
         setupSliders();
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // No BIND_AUTO_CREATE: connect once the service has been started with overlay permission
+        bindService(new Intent(this, FloatingClockService.class), serviceConnection, 0);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        sbOpacity.removeCallbacks(opacityFrameRunnable);
+        opacityFrameRunnable.run();
+        unbindService(serviceConnection);
+        clockService = null;
+    }
+
     private void setupButtons() {
         // Appearance Group
         Button btnToggleShow = findViewById(R.id.btnToggleShow);
@@ -77,19 +133,15 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void setupSliders() {
-        SeekBar sbOpacity = findViewById(R.id.sbOpacity);
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        int currentOpacity = prefs.getInt(KEY_OPACITY, 100);
-        sbOpacity.setProgress(currentOpacity);
-        
+        sbOpacity = findViewById(R.id.sbOpacity);
+        // The prefs belong to the :overlay process; the real values arrive with MSG_STATE
+        sbOpacity.setProgress(100);
+
         sbOpacity.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
                 if (fromUser) {
-                    Intent intent = new Intent(MainActivity.this, FloatingClockService.class);
-                    intent.setAction(FloatingClockService.ACTION_SET_OPACITY);
-                    intent.putExtra(FloatingClockService.EXTRA_OPACITY, progress);
-                    startService(intent);
+                    if (pendingOpacity.offer(progress)) seekBar.postOnAnimation(opacityFrameRunnable);
                 }
             }
 
@@ -142,8 +194,7 @@ public class MainActivity extends AppCompatActivity {
         ClipData clip = ClipData.newPlainText(label, text);
         if (clipboard != null) {
             clipboard.setPrimaryClip(clip);
-            SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-            if (prefs.getBoolean(KEY_SHOW_TOASTS, true)) {
+            if (showToasts) {
                 Toast.makeText(this, getString(R.string.toast_copied) + " " + text, Toast.LENGTH_SHORT).show();
             }
         }
@@ -155,11 +206,40 @@ public class MainActivity extends AppCompatActivity {
             checkOverlayPermission();
             return;
         }
+        if (send(FloatingClockService.MSG_COMMAND, action, 0)) return;
         Intent intent = new Intent(this, FloatingClockService.class);
         intent.setAction(action);
         startService(intent);
     }
 
+    /** @return false if not bound (or the service died) and the caller should use startService */
+    private boolean send(int what, String action, int arg) {
+        if (clockService == null) return false;
+        Message msg = Message.obtain(null, what, arg, 0);
+        if (action != null) msg.getData().putString(FloatingClockService.KEY_ACTION, action);
+        msg.replyTo = replyMessenger;
+        try {
+            clockService.send(msg);
+            return true;
+        } catch (RemoteException e) {
+            clockService = null;
+            return false;
+        }
+    }
+
+    private boolean onServiceReply(Message msg) {
+        if (msg.what != FloatingClockService.MSG_STATE) return false;
+        Bundle state = msg.getData();
+        showToasts = state.getBoolean(FloatingClockService.EXTRA_SHOW_TOASTS, showToasts);
+        isPassthrough = state.getBoolean(FloatingClockService.EXTRA_PASSTHROUGH, isPassthrough);
+        tvStatus.setText(isPassthrough ? R.string.status_passthrough : R.string.status_blocking);
+        // Not while the user is dragging it: a reply to an older value would make it jump back
+        if (!pendingOpacity.hasPending() && !sbOpacity.isPressed()) {
+            sbOpacity.setProgress(state.getInt(FloatingClockService.EXTRA_OPACITY, sbOpacity.getProgress()));
+        }
+        return true;
+    }
+
     private void checkOverlayPermission() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             if (!Settings.canDrawOverlays(this)) {
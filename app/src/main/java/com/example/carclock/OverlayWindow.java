@@ -0,0 +1,256 @@
+package com.example.carclock;
+
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.util.DisplayMetrics;
+import android.view.Gravity;
+import android.view.LayoutInflater;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.WindowManager;
+
+import com.example.carclock.core.ClockSettings;
+import com.example.carclock.core.GestureRecognizer;
+import com.example.carclock.core.Histogram;
+import com.example.carclock.core.Scheduler;
+import com.example.carclock.core.StyleTable;
+
+/**
+ * One clock window on one display: its view, window params, drag and touch handling.
+ * It owns no timers or formatting; the service pushes the shared time text into every
+ * window, so another display only costs its own draws.
+ */
+final class OverlayWindow implements GestureRecognizer.Callback {
+
+    interface Listener {
+        void onClick(OverlayWindow window);
+        void onDoubleClick(OverlayWindow window);
+        void onLongPress(OverlayWindow window);
+        /** The window was dragged or clamped; {@link #state} has the new position. */
+        void onMoved(OverlayWindow window);
+    }
+
+    final int displayId;
+    final String displayKey; // display name; ids are reassigned on hot-plug, names are not
+    /** Text size, style and position are this window's own; the service syncs the rest. */
+    final ClockSettings state;
+    // What the view and window currently show; apply() only acts on the difference
+    private final ClockSettings applied = new ClockSettings();
+
+    private final Context context;
+    private final WindowManager windowManager;
+    private final Scheduler scheduler; // gesture timers
+    private final Listener listener;
+    private final LayoutPassCounter layoutPassCounter = new LayoutPassCounter();
+
+    private View view;
+    private ClockView clockView;
+    private WindowManager.LayoutParams params;
+    private DragController dragController;
+    private GestureRecognizer gestures;
+    private int initialX, initialY;
+    boolean displayOn = true;
+
+    private final Runnable longPressTimer = () ->
+            gestures.onTimer(GestureRecognizer.TIMER_LONG_PRESS, scheduler.uptimeMillis());
+    private final Runnable clickTimer = () ->
+            gestures.onTimer(GestureRecognizer.TIMER_CLICK, scheduler.uptimeMillis());
+
+    OverlayWindow(Context displayContext, int displayId, String displayKey, ClockSettings state,
+                  Scheduler scheduler, Listener listener) {
+        this.context = displayContext;
+        this.displayId = displayId;
+        this.displayKey = displayKey;
+        this.state = state;
+        this.scheduler = scheduler;
+        this.listener = listener;
+        this.windowManager = displayContext.getSystemService(WindowManager.class);
+    }
+
+    /** Builds the params, then inflates and adds the view; {@code state} must already be loaded. */
+    void attach(StyleTable styles, Histogram drawUs, Runnable onFirstDraw) {
+        int flags = WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
+                    WindowManager.LayoutParams.FLAG_LAYOUT_NO_LIMITS |
+                    WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN;
+        if (state.passthrough) flags |= WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+
+        params = new WindowManager.LayoutParams(
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.WRAP_CONTENT,
+                WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY, flags, PixelFormat.TRANSLUCENT
+        );
+        params.gravity = Gravity.TOP | Gravity.START;
+        params.x = state.x;
+        params.y = state.y;
+
+        view = LayoutInflater.from(context).inflate(R.layout.layout_floating_clock, null);
+        clockView = view.findViewById(R.id.clock_view);
+        clockView.setDrawMetrics(drawUs, onFirstDraw);
+        clockView.setTextSize(state.textSize);
+        clockView.setBold(state.bold);
+        applyFormat();
+        clockView.setStyle(styles.get(state.shownStyleIndex(styles)), state.bgVisible);
+        clockView.setOpacity(state.shownOpacity() / 100f);
+        if (!state.visible) view.setVisibility(View.GONE);
+
+        view.getViewTreeObserver().addOnGlobalLayoutListener(layoutPassCounter);
+        windowManager.addView(view, params);
+        dragController = new DragController(windowManager, view, params);
+        dragController.setSnapToEdges(state.snapToEdges);
+        // After the first layout the view size is known and the saved position can be checked
+        view.post(() -> {
+            dragController.clampToDisplay();
+            onPositionChanged();
+        });
+        setupTouchListener();
+        applied.copyFrom(state);
+    }
+
+    /**
+     * Pushes what changed in {@link #state} since the last call into the view and window,
+     * with at most one updateViewLayout. A no-op command touches nothing.
+     *
+     * @return the ClockSettings.CHANGED_* bits that were applied
+     */
+    int apply(StyleTable styles, Runnable onWindowUpdate) {
+        int changes = state.changesFrom(applied);
+        if (changes == 0) return 0;
+        if ((changes & ClockSettings.CHANGED_POSITION) != 0) {
+            // ACTION_APPLY_STATE positions are absolute and may be stale or from another display
+            state.x = dragController.clampX(state.x);
+            state.y = dragController.clampY(state.y);
+        }
+        applied.copyFrom(state);
+
+        if ((changes & ClockSettings.CHANGED_TEXT_SIZE) != 0) clockView.setTextSize(state.textSize);
+        if ((changes & ClockSettings.CHANGED_BOLD) != 0) clockView.setBold(state.bold);
+        if ((changes & (ClockSettings.CHANGED_FORMAT | ClockSettings.CHANGED_MODE)) != 0) applyFormat();
+        int ambient = ClockSettings.CHANGED_AUTO_STYLE | ClockSettings.CHANGED_AMBIENT;
+        if ((changes & (ClockSettings.CHANGED_STYLE | ClockSettings.CHANGED_BG | ambient)) != 0) {
+            clockView.setStyle(styles.get(state.shownStyleIndex(styles)), state.bgVisible);
+        }
+        if ((changes & (ClockSettings.CHANGED_OPACITY | ambient)) != 0) clockView.setOpacity(state.shownOpacity() / 100f);
+        if ((changes & ClockSettings.CHANGED_VISIBLE) != 0) view.setVisibility(state.visible ? View.VISIBLE : View.GONE);
+        if ((changes & ClockSettings.CHANGED_SNAP) != 0) dragController.setSnapToEdges(state.snapToEdges);
+        if ((changes & ClockSettings.CHANGED_CLICK_MODE) != 0) gestures.setSingleClickOnly(state.singleClickOnly);
+
+        if ((changes & (ClockSettings.CHANGED_POSITION | ClockSettings.CHANGED_PASSTHROUGH)) != 0) {
+            if (state.passthrough) params.flags |= WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+            else params.flags &= ~WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+            params.x = state.x;
+            params.y = state.y;
+            try {
+                windowManager.updateViewLayout(view, params);
+                onWindowUpdate.run();
+            } catch (Exception ignored) {}
+        }
+        return changes;
+    }
+
+    void setTime(char[] text, int length) {
+        clockView.setTime(text, length);
+    }
+
+    void setInfo(String... fields) {
+        clockView.setInfo(fields);
+    }
+
+    DisplayMetrics getDisplayMetrics() {
+        return context.getResources().getDisplayMetrics();
+    }
+
+    int getWidth() { return view.getWidth(); }
+
+    int getHeight() { return view.getHeight(); }
+
+    DragController getDragController() { return dragController; }
+
+    LayoutPassCounter getLayoutPassCounter() { return layoutPassCounter; }
+
+    /** First ACTION_DOWN to callback of the gesture just reported. */
+    long getLastGestureLatencyMillis() { return gestures.getLastLatencyMillis(); }
+
+    void detach() {
+        dragController.cancelFrame();
+        scheduler.remove(longPressTimer);
+        scheduler.remove(clickTimer);
+        view.getViewTreeObserver().removeOnGlobalLayoutListener(layoutPassCounter);
+        try {
+            windowManager.removeView(view);
+        } catch (Exception ignored) {} // the display may already be gone
+    }
+
+    private void setupTouchListener() {
+        ViewConfiguration config = ViewConfiguration.get(context);
+        gestures = new GestureRecognizer(this, config.getScaledTouchSlop(),
+                ViewConfiguration.getLongPressTimeout(), ViewConfiguration.getDoubleTapTimeout());
+        gestures.setSingleClickOnly(state.singleClickOnly);
+
+        view.setOnTouchListener((v, event) -> {
+            if (state.passthrough) return false;
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN: gestures.onDown(event.getEventTime(), event.getRawX(), event.getRawY()); return true;
+                case MotionEvent.ACTION_MOVE: gestures.onMove(event.getEventTime(), event.getRawX(), event.getRawY()); return true;
+                case MotionEvent.ACTION_UP: gestures.onUp(event.getEventTime(), event.getRawX(), event.getRawY()); return true;
+                case MotionEvent.ACTION_CANCEL: gestures.onCancel(); return true;
+            }
+            return false;
+        });
+    }
+
+    // Timers always use all eight cells (mm:ss.cc or hh:mm:ss)
+    private void applyFormat() {
+        clockView.setFormat(state.vertical, state.showSeconds || state.mode != ClockSettings.MODE_CLOCK);
+    }
+
+    private void onPositionChanged() {
+        // The window is already there, so this is not a change apply() needs to make
+        state.x = applied.x = params.x;
+        state.y = applied.y = params.y;
+        listener.onMoved(this);
+    }
+
+    @Override
+    public void onClick() { listener.onClick(this); }
+
+    @Override
+    public void onDoubleClick() { listener.onDoubleClick(this); }
+
+    @Override
+    public void onLongPress() { listener.onLongPress(this); }
+
+    @Override
+    public void onDragStart() {
+        initialX = params.x;
+        initialY = params.y;
+        dragController.begin();
+    }
+
+    @Override
+    public void onDrag(float dx, float dy) {
+        // Coalesced to one updateViewLayout per frame
+        dragController.moveTo(initialX + (int) dx, initialY + (int) dy);
+    }
+
+    @Override
+    public void onDragEnd() {
+        dragController.end();
+        onPositionChanged();
+    }
+
+    @Override
+    public void scheduleTimer(int timer, long delayMillis) {
+        scheduler.remove(timerRunnable(timer));
+        scheduler.postDelayed(timerRunnable(timer), delayMillis);
+    }
+
+    @Override
+    public void cancelTimer(int timer) {
+        scheduler.remove(timerRunnable(timer));
+    }
+
+    private Runnable timerRunnable(int timer) {
+        return timer == GestureRecognizer.TIMER_LONG_PRESS ? longPressTimer : clickTimer;
+    }
+}
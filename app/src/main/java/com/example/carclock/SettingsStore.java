@@ -0,0 +1,497 @@
+package com.example.carclock;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.StrictMode;
+import android.os.SystemClock;
+import android.os.UserManager;
+import android.provider.Settings;
+
+import com.example.carclock.core.ClockSettings;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Typed view of CarClockPrefs. Setters only mark the changed fields dirty; dirty fields
+ * are written in one editor commit after a short quiet period, so a burst of commands
+ * (slider drags, Tasker loops) costs a single prefs file write, made on the I/O thread.
+ *
+ * The file lives in device-protected storage so the service can start from
+ * LOCKED_BOOT_COMPLETED with the user's settings instead of defaults.
+ */
+final class SettingsStore {
+
+    static final String PREFS_NAME = "CarClockPrefs";
+    static final String KEY_X = "pos_x";
+    static final String KEY_Y = "pos_y";
+    static final String KEY_PASSTHROUGH = "passthrough";
+    static final String KEY_SECONDS = "show_seconds";
+    static final String KEY_BG_VISIBLE = "bg_visible";
+    static final String KEY_BOLD = "is_bold";
+    static final String KEY_VERTICAL = "is_vertical";
+    static final String KEY_TEXT_SIZE = "text_size";
+    static final String KEY_STYLE_INDEX = "style_index";
+    static final String KEY_SHOW_TOASTS = "show_toasts";
+    static final String KEY_IS_VISIBLE = "is_visible";
+    static final String KEY_OPACITY = "bg_opacity";
+    static final String KEY_SNAP_EDGES = "snap_edges";
+    static final String KEY_SINGLE_CLICK_ONLY = "single_click_only";
+    static final String KEY_SHOW_DATE = "show_date";
+    static final String KEY_SHOW_WEEKDAY = "show_weekday";
+    static final String KEY_SECOND_ZONE = "second_zone";
+    static final String KEY_SECOND_ZONE_LABEL = "second_zone_label";
+    static final String KEY_MODE = "clock_mode";
+    static final String KEY_TIMER_RUNNING = "timer_running";
+    static final String KEY_TIMER_ANCHOR = "timer_anchor"; // elapsedRealtime
+    static final String KEY_TIMER_ELAPSED = "timer_elapsed";
+    static final String KEY_COUNTDOWN = "countdown_ms";
+    // elapsedRealtime restarts with the device: the boot the anchor belongs to, and its wall time
+    static final String KEY_TIMER_BOOT = "timer_boot";
+    static final String KEY_TIMER_ANCHOR_WALL = "timer_anchor_wall";
+    static final String KEY_AUTO_STYLE = "auto_style";
+    static final String KEY_DISPLAYS = "overlay_displays"; // names of the extra displays with a clock
+    static final String KEY_SUBSCRIBERS = "event_subscribers"; // packages receiving gesture events
+    static final String KEY_IMPLICIT_EVENTS = "implicit_events"; // also send gesture events unaddressed
+    // Per-display layout keys are KEY_X + "@" + display name, and likewise for y, size and style
+
+    private static final int DIRTY_POSITION = 1;
+    private static final int DIRTY_PASSTHROUGH = 1 << 1;
+    private static final int DIRTY_SECONDS = 1 << 2;
+    private static final int DIRTY_BG_VISIBLE = 1 << 3;
+    private static final int DIRTY_BOLD = 1 << 4;
+    private static final int DIRTY_VERTICAL = 1 << 5;
+    private static final int DIRTY_TEXT_SIZE = 1 << 6;
+    private static final int DIRTY_STYLE_INDEX = 1 << 7;
+    private static final int DIRTY_SHOW_TOASTS = 1 << 8;
+    private static final int DIRTY_IS_VISIBLE = 1 << 9;
+    private static final int DIRTY_OPACITY = 1 << 10;
+    private static final int DIRTY_SNAP_EDGES = 1 << 11;
+    private static final int DIRTY_SINGLE_CLICK_ONLY = 1 << 12;
+    private static final int DIRTY_DISPLAYS = 1 << 13;
+    private static final int DIRTY_SUBSCRIBERS = 1 << 14;
+    private static final int DIRTY_SHOW_DATE = 1 << 15;
+    private static final int DIRTY_SHOW_WEEKDAY = 1 << 16;
+    private static final int DIRTY_SECOND_ZONE = 1 << 17; // id and label together
+    private static final int DIRTY_MODE = 1 << 18;
+    private static final int DIRTY_TIMER = 1 << 19;
+    private static final int DIRTY_AUTO_STYLE = 1 << 20;
+    private static final int DIRTY_IMPLICIT_EVENTS = 1 << 21;
+
+    private static final long DEBOUNCE_MILLIS = 500;
+    private static final long MAX_DELAY_MILLIS = 5000; // a steady command stream still gets persisted
+
+    private static boolean migrated = false;
+
+    private final SharedPreferences prefs;
+    private final Handler handler;
+    private final Handler ioHandler;
+    private final Runnable flushRunnable = this::flush;
+
+    private int x, y;
+    private boolean hasPosition;
+    private boolean passthrough;
+    private boolean showSeconds;
+    private boolean bgVisible;
+    private boolean bold;
+    private boolean vertical;
+    private float textSize;
+    private int styleIndex;
+    private boolean showToasts;
+    private boolean visible;
+    private int opacity;
+    private boolean snapToEdges;
+    private boolean singleClickOnly;
+    private boolean showDate;
+    private boolean showWeekday;
+    private String secondZone;
+    private String secondZoneLabel;
+    private int mode;
+    private boolean timerRunning;
+    private long timerAnchor;
+    private long timerElapsed;
+    private long countdownMillis;
+    private boolean autoStyle;
+    private final int bootCount;
+    private final Set<String> displays = new HashSet<>();
+    private final Map<String, ClockSettings> displayLayouts = new HashMap<>();
+    private final Set<String> subscribers = new HashSet<>();
+    private boolean implicitEvents;
+
+    private int dirty = 0;
+    private long firstDirtyAt = 0;
+    private long writeCount = 0;
+
+    SettingsStore(Context context, Handler handler, Handler ioHandler) {
+        this.prefs = open(context);
+        this.handler = handler;
+        this.ioHandler = ioHandler;
+        // One getAll() copy instead of a locked lookup per key
+        Map<String, ?> all = prefs.getAll();
+        hasPosition = all.containsKey(KEY_X) && all.containsKey(KEY_Y);
+        x = get(all, KEY_X, 0);
+        y = get(all, KEY_Y, 0);
+        passthrough = get(all, KEY_PASSTHROUGH, false);
+        showSeconds = get(all, KEY_SECONDS, true);
+        bgVisible = get(all, KEY_BG_VISIBLE, true);
+        bold = get(all, KEY_BOLD, false);
+        vertical = get(all, KEY_VERTICAL, false);
+        textSize = get(all, KEY_TEXT_SIZE, 24f);
+        styleIndex = get(all, KEY_STYLE_INDEX, 0);
+        showToasts = get(all, KEY_SHOW_TOASTS, true);
+        visible = get(all, KEY_IS_VISIBLE, true);
+        opacity = get(all, KEY_OPACITY, 100);
+        snapToEdges = get(all, KEY_SNAP_EDGES, false);
+        singleClickOnly = get(all, KEY_SINGLE_CLICK_ONLY, false);
+        showDate = get(all, KEY_SHOW_DATE, false);
+        showWeekday = get(all, KEY_SHOW_WEEKDAY, false);
+        secondZone = get(all, KEY_SECOND_ZONE, "");
+        secondZoneLabel = get(all, KEY_SECOND_ZONE_LABEL, "");
+        mode = get(all, KEY_MODE, ClockSettings.MODE_CLOCK);
+        timerRunning = get(all, KEY_TIMER_RUNNING, false);
+        timerAnchor = get(all, KEY_TIMER_ANCHOR, 0L);
+        timerElapsed = get(all, KEY_TIMER_ELAPSED, 0L);
+        countdownMillis = get(all, KEY_COUNTDOWN, 5 * 60_000L);
+        autoStyle = get(all, KEY_AUTO_STYLE, false);
+        bootCount = Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+        if (timerRunning && get(all, KEY_TIMER_BOOT, bootCount) != bootCount) {
+            // Rebooted since: carry the running timer over by wall time, the only clock that survived
+            long sinceAnchor = System.currentTimeMillis() - get(all, KEY_TIMER_ANCHOR_WALL, System.currentTimeMillis());
+            timerAnchor = SystemClock.elapsedRealtime() - Math.max(0, sinceAnchor);
+            // Save this boot's anchor, so later starts use elapsedRealtime again instead of wall time
+            markDirty(DIRTY_TIMER);
+        }
+        Object names = all.get(KEY_DISPLAYS);
+        if (names instanceof Set) {
+            for (Object name : (Set<?>) names) displays.add((String) name);
+        }
+        Object packages = all.get(KEY_SUBSCRIBERS);
+        if (packages instanceof Set) {
+            for (Object pkg : (Set<?>) packages) subscribers.add((String) pkg);
+        }
+        implicitEvents = get(all, KEY_IMPLICIT_EVENTS, true);
+        for (String name : displays) {
+            if (!all.containsKey(KEY_X + "@" + name)) continue;
+            ClockSettings layout = new ClockSettings();
+            layout.x = get(all, KEY_X + "@" + name, 0);
+            layout.y = get(all, KEY_Y + "@" + name, 0);
+            layout.textSize = get(all, KEY_TEXT_SIZE + "@" + name, 24f);
+            layout.styleIndex = get(all, KEY_STYLE_INDEX + "@" + name, 0);
+            displayLayouts.put(name, layout);
+        }
+    }
+
+    /**
+     * CarClockPrefs in device-protected storage. Only the :overlay process opens it: a second
+     * process holding its own copy could have it moved away by the CE-to-DE migration, or
+     * write stale values back over it. MainActivity gets its values from the service.
+     */
+    private static SharedPreferences open(Context context) {
+        Context storage = context.createDeviceProtectedStorageContext();
+        if (!migrated && context.getSystemService(UserManager.class).isUserUnlocked()) {
+            // Older installs wrote to credential-encrypted storage. The migration has to finish
+            // before the load below, so it stays on this (main) thread and disk writes are allowed
+            // for it: once per process, and a no-op once the old file is gone.
+            StrictMode.ThreadPolicy policy = StrictMode.allowThreadDiskWrites();
+            try {
+                migrateFromCredentialStorage(context, storage);
+                migrated = true;
+            } finally {
+                StrictMode.setThreadPolicy(policy);
+            }
+        }
+        // The one main-thread read we allow: the first frame can't be drawn without the settings.
+        // Loading here means later gets are served from memory.
+        StrictMode.ThreadPolicy policy = StrictMode.allowThreadDiskReads();
+        try {
+            SharedPreferences prefs = storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            prefs.contains(KEY_X); // blocks until loaded
+            return prefs;
+        } finally {
+            StrictMode.setThreadPolicy(policy);
+        }
+    }
+
+    /**
+     * Merges the old credential-encrypted file into device-protected storage, then deletes it.
+     * Not a plain move: on the first boot after the upgrade the service may already have saved
+     * changes before unlock, and those are newer than anything in the old file.
+     */
+    private static void migrateFromCredentialStorage(Context context, Context storage) {
+        Map<String, ?> old = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getAll();
+        if (old.isEmpty()) return;
+        SharedPreferences prefs = storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        Map<String, ?> current = prefs.getAll();
+        SharedPreferences.Editor editor = prefs.edit();
+        for (Map.Entry<String, ?> e : old.entrySet()) {
+            if (!current.containsKey(e.getKey())) put(editor, e.getKey(), e.getValue());
+        }
+        editor.commit();
+        context.deleteSharedPreferences(PREFS_NAME);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void put(SharedPreferences.Editor editor, String key, Object value) {
+        if (value instanceof Integer) editor.putInt(key, (Integer) value);
+        else if (value instanceof Long) editor.putLong(key, (Long) value);
+        else if (value instanceof Float) editor.putFloat(key, (Float) value);
+        else if (value instanceof Boolean) editor.putBoolean(key, (Boolean) value);
+        else if (value instanceof String) editor.putString(key, (String) value);
+        else if (value instanceof Set) editor.putStringSet(key, (Set<String>) value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T get(Map<String, ?> all, String key, T defaultValue) {
+        Object value = all.get(key);
+        return value != null && value.getClass() == defaultValue.getClass() ? (T) value : defaultValue;
+    }
+
+    int getX(int defaultX) { return hasPosition ? x : defaultX; }
+    int getY(int defaultY) { return hasPosition ? y : defaultY; }
+
+    void setPosition(int x, int y) {
+        if (hasPosition && this.x == x && this.y == y) return;
+        this.x = x;
+        this.y = y;
+        hasPosition = true;
+        markDirty(DIRTY_POSITION);
+    }
+
+    void setPassthrough(boolean value) {
+        if (passthrough != value) { passthrough = value; markDirty(DIRTY_PASSTHROUGH); }
+    }
+
+    void setShowSeconds(boolean value) {
+        if (showSeconds != value) { showSeconds = value; markDirty(DIRTY_SECONDS); }
+    }
+
+    void setBgVisible(boolean value) {
+        if (bgVisible != value) { bgVisible = value; markDirty(DIRTY_BG_VISIBLE); }
+    }
+
+    void setBold(boolean value) {
+        if (bold != value) { bold = value; markDirty(DIRTY_BOLD); }
+    }
+
+    void setVertical(boolean value) {
+        if (vertical != value) { vertical = value; markDirty(DIRTY_VERTICAL); }
+    }
+
+    void setTextSize(float value) {
+        if (textSize != value) { textSize = value; markDirty(DIRTY_TEXT_SIZE); }
+    }
+
+    void setStyleIndex(int value) {
+        if (styleIndex != value) { styleIndex = value; markDirty(DIRTY_STYLE_INDEX); }
+    }
+
+    void setShowToasts(boolean value) {
+        if (showToasts != value) { showToasts = value; markDirty(DIRTY_SHOW_TOASTS); }
+    }
+
+    void setVisible(boolean value) {
+        if (visible != value) { visible = value; markDirty(DIRTY_IS_VISIBLE); }
+    }
+
+    void setOpacity(int value) {
+        if (opacity != value) { opacity = value; markDirty(DIRTY_OPACITY); }
+    }
+
+    void setSnapToEdges(boolean value) {
+        if (snapToEdges != value) { snapToEdges = value; markDirty(DIRTY_SNAP_EDGES); }
+    }
+
+    void setSingleClickOnly(boolean value) {
+        if (singleClickOnly != value) { singleClickOnly = value; markDirty(DIRTY_SINGLE_CLICK_ONLY); }
+    }
+
+    void setShowDate(boolean value) {
+        if (showDate != value) { showDate = value; markDirty(DIRTY_SHOW_DATE); }
+    }
+
+    void setShowWeekday(boolean value) {
+        if (showWeekday != value) { showWeekday = value; markDirty(DIRTY_SHOW_WEEKDAY); }
+    }
+
+    void setAutoStyle(boolean value) {
+        if (autoStyle != value) { autoStyle = value; markDirty(DIRTY_AUTO_STYLE); }
+    }
+
+    void setMode(int value) {
+        if (mode != value) { mode = value; markDirty(DIRTY_MODE); }
+    }
+
+    void setTimer(boolean running, long anchor, long elapsed, long countdown) {
+        if (timerRunning == running && timerAnchor == anchor && timerElapsed == elapsed && countdownMillis == countdown) return;
+        timerRunning = running;
+        timerAnchor = anchor;
+        timerElapsed = elapsed;
+        countdownMillis = countdown;
+        markDirty(DIRTY_TIMER);
+    }
+
+    void setSecondZone(String zone, String label) {
+        if (secondZone.equals(zone) && secondZoneLabel.equals(label)) return;
+        secondZone = zone;
+        secondZoneLabel = label;
+        markDirty(DIRTY_SECOND_ZONE);
+    }
+
+    /** Copies everything but the position (see {@link #getX}) into {@code s}. */
+    void load(ClockSettings s) {
+        s.passthrough = passthrough;
+        s.showSeconds = showSeconds;
+        s.bgVisible = bgVisible;
+        s.bold = bold;
+        s.vertical = vertical;
+        s.textSize = textSize;
+        s.styleIndex = styleIndex;
+        s.showToasts = showToasts;
+        s.visible = visible;
+        s.opacity = opacity;
+        s.snapToEdges = snapToEdges;
+        s.singleClickOnly = singleClickOnly;
+        s.showDate = showDate;
+        s.showWeekday = showWeekday;
+        s.secondZone = secondZone;
+        s.secondZoneLabel = secondZoneLabel;
+        s.mode = mode;
+        s.timerRunning = timerRunning;
+        s.timerAnchor = timerAnchor;
+        s.timerElapsed = timerElapsed;
+        s.countdownMillis = countdownMillis;
+        s.autoStyle = autoStyle;
+    }
+
+    /** Marks the fields that differ from {@code s} dirty; the position goes through setPosition. */
+    void save(ClockSettings s) {
+        setPassthrough(s.passthrough);
+        setShowSeconds(s.showSeconds);
+        setBgVisible(s.bgVisible);
+        setBold(s.bold);
+        setVertical(s.vertical);
+        setTextSize(s.textSize);
+        setStyleIndex(s.styleIndex);
+        setShowToasts(s.showToasts);
+        setVisible(s.visible);
+        setOpacity(s.opacity);
+        setSnapToEdges(s.snapToEdges);
+        setSingleClickOnly(s.singleClickOnly);
+        setShowDate(s.showDate);
+        setShowWeekday(s.showWeekday);
+        setSecondZone(s.secondZone, s.secondZoneLabel);
+        setMode(s.mode);
+        setTimer(s.timerRunning, s.timerAnchor, s.timerElapsed, s.countdownMillis);
+        setAutoStyle(s.autoStyle);
+    }
+
+    /** Extra displays (by name) that should get a clock when connected. */
+    Set<String> getDisplays() { return Collections.unmodifiableSet(displays); }
+
+    void setDisplayEnabled(String name, boolean enabled) {
+        if (enabled ? displays.add(name) : displays.remove(name)) markDirty(DIRTY_DISPLAYS);
+    }
+
+    Set<String> getSubscribers() { return Collections.unmodifiableSet(subscribers); }
+
+    void setSubscribed(String pkg, boolean subscribed) {
+        if (subscribed ? subscribers.add(pkg) : subscribers.remove(pkg)) markDirty(DIRTY_SUBSCRIBERS);
+    }
+
+    /** Whether gesture events still go out as the original implicit broadcast, next to the subscribers' copies. */
+    boolean getImplicitEvents() { return implicitEvents; }
+
+    void setImplicitEvents(boolean value) {
+        if (implicitEvents != value) { implicitEvents = value; markDirty(DIRTY_IMPLICIT_EVENTS); }
+    }
+
+    /** @return false if the display has no saved layout yet and {@code s} was left as is */
+    boolean loadDisplay(String name, ClockSettings s) {
+        ClockSettings layout = displayLayouts.get(name);
+        if (layout == null) return false;
+        s.copyLayoutFrom(layout);
+        return true;
+    }
+
+    void saveDisplay(String name, ClockSettings s) {
+        ClockSettings layout = displayLayouts.get(name);
+        if (layout == null) {
+            layout = new ClockSettings();
+            displayLayouts.put(name, layout);
+        } else if (layout.x == s.x && layout.y == s.y && layout.textSize == s.textSize
+                && layout.styleIndex == s.styleIndex) {
+            return;
+        }
+        layout.copyLayoutFrom(s);
+        markDirty(DIRTY_DISPLAYS);
+    }
+
+    /** Number of prefs commits issued so far. */
+    long getWriteCount() { return writeCount; }
+
+    /** Writes all dirty fields now, e.g. from onDestroy or onTrimMemory. */
+    void flush() {
+        handler.removeCallbacks(flushRunnable);
+        if (dirty == 0) return;
+        SharedPreferences.Editor editor = prefs.edit();
+        if ((dirty & DIRTY_POSITION) != 0) editor.putInt(KEY_X, x).putInt(KEY_Y, y);
+        if ((dirty & DIRTY_PASSTHROUGH) != 0) editor.putBoolean(KEY_PASSTHROUGH, passthrough);
+        if ((dirty & DIRTY_SECONDS) != 0) editor.putBoolean(KEY_SECONDS, showSeconds);
+        if ((dirty & DIRTY_BG_VISIBLE) != 0) editor.putBoolean(KEY_BG_VISIBLE, bgVisible);
+        if ((dirty & DIRTY_BOLD) != 0) editor.putBoolean(KEY_BOLD, bold);
+        if ((dirty & DIRTY_VERTICAL) != 0) editor.putBoolean(KEY_VERTICAL, vertical);
+        if ((dirty & DIRTY_TEXT_SIZE) != 0) editor.putFloat(KEY_TEXT_SIZE, textSize);
+        if ((dirty & DIRTY_STYLE_INDEX) != 0) editor.putInt(KEY_STYLE_INDEX, styleIndex);
+        if ((dirty & DIRTY_SHOW_TOASTS) != 0) editor.putBoolean(KEY_SHOW_TOASTS, showToasts);
+        if ((dirty & DIRTY_IS_VISIBLE) != 0) editor.putBoolean(KEY_IS_VISIBLE, visible);
+        if ((dirty & DIRTY_OPACITY) != 0) editor.putInt(KEY_OPACITY, opacity);
+        if ((dirty & DIRTY_SNAP_EDGES) != 0) editor.putBoolean(KEY_SNAP_EDGES, snapToEdges);
+        if ((dirty & DIRTY_SINGLE_CLICK_ONLY) != 0) editor.putBoolean(KEY_SINGLE_CLICK_ONLY, singleClickOnly);
+        if ((dirty & DIRTY_SHOW_DATE) != 0) editor.putBoolean(KEY_SHOW_DATE, showDate);
+        if ((dirty & DIRTY_SHOW_WEEKDAY) != 0) editor.putBoolean(KEY_SHOW_WEEKDAY, showWeekday);
+        if ((dirty & DIRTY_SECOND_ZONE) != 0) {
+            editor.putString(KEY_SECOND_ZONE, secondZone).putString(KEY_SECOND_ZONE_LABEL, secondZoneLabel);
+        }
+        if ((dirty & DIRTY_MODE) != 0) editor.putInt(KEY_MODE, mode);
+        if ((dirty & DIRTY_TIMER) != 0) {
+            long anchorWall = System.currentTimeMillis() - (SystemClock.elapsedRealtime() - timerAnchor);
+            editor.putBoolean(KEY_TIMER_RUNNING, timerRunning)
+                    .putLong(KEY_TIMER_ANCHOR, timerAnchor)
+                    .putLong(KEY_TIMER_ELAPSED, timerElapsed)
+                    .putLong(KEY_COUNTDOWN, countdownMillis)
+                    .putInt(KEY_TIMER_BOOT, bootCount)
+                    .putLong(KEY_TIMER_ANCHOR_WALL, anchorWall);
+        }
+        if ((dirty & DIRTY_AUTO_STYLE) != 0) editor.putBoolean(KEY_AUTO_STYLE, autoStyle);
+        if ((dirty & DIRTY_SUBSCRIBERS) != 0) editor.putStringSet(KEY_SUBSCRIBERS, new HashSet<>(subscribers));
+        if ((dirty & DIRTY_IMPLICIT_EVENTS) != 0) editor.putBoolean(KEY_IMPLICIT_EVENTS, implicitEvents);
+        if ((dirty & DIRTY_DISPLAYS) != 0) {
+            editor.putStringSet(KEY_DISPLAYS, new HashSet<>(displays));
+            for (Map.Entry<String, ClockSettings> e : displayLayouts.entrySet()) {
+                ClockSettings layout = e.getValue();
+                editor.putInt(KEY_X + "@" + e.getKey(), layout.x)
+                        .putInt(KEY_Y + "@" + e.getKey(), layout.y)
+                        .putFloat(KEY_TEXT_SIZE + "@" + e.getKey(), layout.textSize)
+                        .putInt(KEY_STYLE_INDEX + "@" + e.getKey(), layout.styleIndex);
+            }
+        }
+        // Values are captured in the editor now; the file write happens off the main thread
+        ioHandler.post(editor::commit);
+        dirty = 0;
+        writeCount++;
+    }
+
+    private void markDirty(int field) {
+        long now = SystemClock.uptimeMillis();
+        if (dirty == 0) firstDirtyAt = now;
+        dirty |= field;
+        // Trailing debounce, capped so a command that never stops can't postpone the write forever
+        long delay = Math.min(DEBOUNCE_MILLIS, firstDirtyAt + MAX_DELAY_MILLIS - now);
+        handler.removeCallbacks(flushRunnable);
+        handler.postDelayed(flushRunnable, Math.max(0, delay));
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.carclock;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Color;
+import android.util.Log;
+import android.util.TypedValue;
+
+import com.example.carclock.core.ClockStyle;
+import com.example.carclock.core.StyleTable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds the {@link StyleTable} once from res/raw/clock_styles.json. Switching styles
+ * afterwards is just an index lookup, and adding styles to the JSON costs nothing per switch.
+ */
+final class StyleRegistry {
+
+    private static final String TAG = "CarClock";
+
+    private StyleRegistry() {}
+
+    static StyleTable load(Context context) {
+        Resources res = context.getResources();
+        try (InputStream in = res.openRawResource(R.raw.clock_styles)) {
+            JSONArray array = new JSONArray(readFully(in));
+            ClockStyle[] styles = new ClockStyle[array.length()];
+            for (int i = 0; i < styles.length; i++) styles[i] = parse(array.getJSONObject(i), res);
+            if (styles.length > 0) return new StyleTable(styles);
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            Log.w(TAG, "Invalid clock_styles.json, using the default style", e);
+        }
+        float hairline = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 1, res.getDisplayMetrics());
+        return new StyleTable(
+                new ClockStyle("dark", 0x99000000, Color.WHITE, Color.WHITE, ClockView.DEFAULT_STROKE_COLOR, hairline));
+    }
+
+    private static ClockStyle parse(JSONObject json, Resources res) throws JSONException {
+        int text = Color.parseColor(json.getString("text"));
+        float strokeDp = (float) json.optDouble("strokeWidthDp", 1);
+        return new ClockStyle(
+                json.optString("name"),
+                Color.parseColor(json.getString("panel")),
+                text,
+                json.has("textNoPanel") ? Color.parseColor(json.getString("textNoPanel")) : text,
+                Color.parseColor(json.optString("stroke", "#33FFFFFF")),
+                TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, strokeDp, res.getDisplayMetrics()));
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        int n;
+        while ((n = in.read(chunk)) != -1) out.write(chunk, 0, n);
+        return out.toString(StandardCharsets.UTF_8.name());
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.carclock.bench;
+
+import com.example.carclock.core.ClockCommands;
+import com.example.carclock.core.ClockSettings;
+import com.example.carclock.core.ClockStyle;
+import com.example.carclock.core.CommandReducer;
+import com.example.carclock.core.StyleTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Applying commands to the settings, singly and as an ACTION_APPLY_STATE style batch, plus the commit diff. */
+@State(Scope.Thread)
+public class CommandReducerBenchmark {
+
+    private static final String[] ACTIONS = {
+            ClockCommands.INCREASE_SIZE, ClockCommands.TOGGLE_BG, ClockCommands.DECREASE_SIZE,
+            ClockCommands.TOGGLE_SECONDS, ClockCommands.TOGGLE_WEIGHT, ClockCommands.RESET_POSITION,
+            ClockCommands.TOGGLE_ORIENTATION, ClockCommands.CHANGE_STYLE
+    };
+
+    private final CommandReducer reducer = new CommandReducer(
+            new StyleTable(new ClockStyle("dark", 0x99000000, 0xFFFFFFFF, 0xFFFFFFFF, 0x33FFFFFF, 2f)));
+    private final ClockSettings state = new ClockSettings();
+    private final ClockSettings applied = new ClockSettings();
+    private int next;
+
+    @Setup
+    public void setUp() {
+        reducer.setViewport(1920, 720, 240, 96);
+    }
+
+    @Benchmark
+    public boolean single() {
+        next = (next + 1) & 7;
+        return reducer.apply(state, ACTIONS[next]);
+    }
+
+    /** SET_BLOCKING while blocking: all a no-op costs before commitState returns. */
+    @Benchmark
+    public int noOp() {
+        reducer.apply(state, ClockCommands.SET_BLOCKING);
+        return state.changesFrom(applied);
+    }
+
+    @Benchmark
+    public ClockSettings batch() {
+        for (String action : ACTIONS) reducer.apply(state, action);
+        reducer.setOpacity(state, 80);
+        return state;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.carclock.bench;
+
+import com.example.carclock.core.GestureRecognizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Touch classification for a tap and for a short drag, timers fired inline. */
+@State(Scope.Thread)
+public class GestureBenchmark {
+
+    private Blackhole sink;
+    private long time;
+
+    private final GestureRecognizer recognizer = new GestureRecognizer(new GestureRecognizer.Callback() {
+        @Override public void onClick() { sink.consume(1); }
+        @Override public void onDoubleClick() { sink.consume(2); }
+        @Override public void onLongPress() { sink.consume(3); }
+        @Override public void onDragStart() {}
+        @Override public void onDrag(float dx, float dy) { sink.consume(dx + dy); }
+        @Override public void onDragEnd() {}
+        @Override public void scheduleTimer(int timer, long delayMillis) {}
+        @Override public void cancelTimer(int timer) {}
+    }, 16f, 500, 300);
+
+    @Benchmark
+    public void tap(Blackhole bh) {
+        sink = bh;
+        time += 1000;
+        recognizer.onDown(time, 100f, 100f);
+        recognizer.onUp(time + 50, 101f, 100f);
+        recognizer.onTimer(GestureRecognizer.TIMER_CLICK, time + 350);
+    }
+
+    @Benchmark
+    public void drag(Blackhole bh) {
+        sink = bh;
+        time += 1000;
+        recognizer.onDown(time, 100f, 100f);
+        for (int i = 1; i <= 10; i++) recognizer.onMove(time + i * 16, 100f + i * 8, 100f);
+        recognizer.onUp(time + 200, 180f, 100f);
+    }
+}
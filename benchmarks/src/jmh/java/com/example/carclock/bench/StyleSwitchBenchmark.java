@@ -0,0 +1,30 @@
+package com.example.carclock.bench;
+
+import com.example.carclock.core.ClockCommands;
+import com.example.carclock.core.ClockSettings;
+import com.example.carclock.core.ClockStyle;
+import com.example.carclock.core.CommandReducer;
+import com.example.carclock.core.StyleTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/** ACTION_CHANGE_STYLE against the four styles in clock_styles.json, up to the style lookup. */
+@State(Scope.Thread)
+public class StyleSwitchBenchmark {
+
+    private final StyleTable styles = new StyleTable(
+            new ClockStyle("dark", 0x99000000, 0xFFFFFFFF, 0xFFFFFFFF, 0x33FFFFFF, 2f),
+            new ClockStyle("light", 0x99FFFFFF, 0xFF000000, 0xFF000000, 0x33FFFFFF, 2f),
+            new ClockStyle("blue", 0xFF2196F3, 0xFFFFFFFF, 0xFFFFFFFF, 0x33FFFFFF, 2f),
+            new ClockStyle("terminal", 0xFF000000, 0xFF00FF00, 0xFF00FF00, 0xFF00FF00, 2f));
+    private final CommandReducer reducer = new CommandReducer(styles);
+    private final ClockSettings state = new ClockSettings();
+
+    @Benchmark
+    public ClockStyle changeStyle() {
+        reducer.apply(state, ClockCommands.CHANGE_STYLE);
+        return styles.get(state.styleIndex);
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.carclock.bench;
+
+import com.example.carclock.core.TimeFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** The per-tick work: one format call per second of wall time. */
+@State(Scope.Thread)
+public class TimeFormatterBenchmark {
+
+    @Param({"true", "false"})
+    boolean showSeconds;
+
+    private final TimeFormatter formatter = new TimeFormatter();
+    private long now;
+
+    @Setup
+    public void setUp() {
+        now = 1_700_000_000_000L;
+    }
+
+    @Benchmark
+    public boolean tick() {
+        now += 1000;
+        return formatter.format(now, showSeconds, false);
+    }
+
+    /** Same instant twice: the unchanged-text path that skips setTime. */
+    @Benchmark
+    public boolean unchanged() {
+        return formatter.format(now, showSeconds, false);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.carclock.core;
+
+/**
+ * Day/night decision from ambient light readings. Two thresholds give a dead band in
+ * which nothing changes, and a switch only happens once the light has stayed past the
+ * other threshold for a dwell time, so a short tunnel or an overpass never flips the
+ * style. Readings may arrive late and in batches (a batched sensor); each carries the
+ * time it was measured, and the decision goes by that. A timer only decides when no
+ * reading arrives at all (an on-change sensor in steady light), and waits out the report
+ * latency first so a reading still in the sensor's FIFO can cancel the switch.
+ */
+public final class AmbientPolicy {
+
+    public static final int LEVEL_UNKNOWN = -1;
+    public static final int LEVEL_DAY = 0;
+    public static final int LEVEL_NIGHT = 1;
+
+    public static final float DEFAULT_NIGHT_LUX = 15f;
+    public static final float DEFAULT_DAY_LUX = 80f;
+    public static final long DEFAULT_TO_NIGHT_MILLIS = 10_000L; // longer than most tunnels
+    public static final long DEFAULT_TO_DAY_MILLIS = 3_000L;
+
+    // What each level shows; styles by name, so reordering clock_styles.json keeps them
+    public static final String DAY_STYLE = "light";
+    public static final String NIGHT_STYLE = "dark";
+    public static final int DAY_OPACITY = 100;
+    public static final int NIGHT_OPACITY = 60; // a full panel glares at night
+
+    private final Scheduler scheduler;
+    private final Runnable onLevelChanged;
+    private final float nightLux, dayLux;
+    private final long toNightMillis, toDayMillis;
+
+    private int level = LEVEL_UNKNOWN;
+    private int pending = LEVEL_UNKNOWN;
+    private long pendingSince = 0;
+    private long reportLatencyMillis = 0;
+    private long readings = 0;
+    private long switches = 0;
+
+    private final Runnable check = new Runnable() {
+        @Override
+        public void run() {
+            if (pending != LEVEL_UNKNOWN) commitPending(scheduler.uptimeMillis());
+        }
+    };
+
+    public AmbientPolicy(Scheduler scheduler, Runnable onLevelChanged) {
+        this(scheduler, onLevelChanged, DEFAULT_NIGHT_LUX, DEFAULT_DAY_LUX, DEFAULT_TO_NIGHT_MILLIS, DEFAULT_TO_DAY_MILLIS);
+    }
+
+    public AmbientPolicy(Scheduler scheduler, Runnable onLevelChanged, float nightLux, float dayLux,
+                         long toNightMillis, long toDayMillis) {
+        if (nightLux >= dayLux) throw new IllegalArgumentException("nightLux must be below dayLux");
+        this.scheduler = scheduler;
+        this.onLevelChanged = onLevelChanged;
+        this.nightLux = nightLux;
+        this.dayLux = dayLux;
+        this.toNightMillis = toNightMillis;
+        this.toDayMillis = toDayMillis;
+    }
+
+    /** How late a batched sensor may deliver a reading. */
+    public void setReportLatency(long millis) {
+        reportLatencyMillis = millis;
+    }
+
+    /** @param uptimeMillis when the reading was measured, on the scheduler's time base */
+    public void onReading(long uptimeMillis, float lux) {
+        readings++;
+        // A batch can hold a whole dwell; settle what was pending before this reading
+        if (pending != LEVEL_UNKNOWN) commitPending(uptimeMillis);
+        if (level == LEVEL_UNKNOWN) {
+            // First reading after a start: no style to protect yet, decide at once
+            setLevel(lux < (nightLux + dayLux) / 2 ? LEVEL_NIGHT : LEVEL_DAY);
+            return;
+        }
+        int target = lux <= nightLux ? LEVEL_NIGHT : lux >= dayLux ? LEVEL_DAY : level;
+        if (target == level) {
+            clearPending();
+        } else if (target != pending) {
+            pending = target;
+            pendingSince = uptimeMillis;
+            scheduler.remove(check);
+            scheduler.postAtTime(check, uptimeMillis + dwell(target) + reportLatencyMillis);
+        }
+    }
+
+    /** The sensor stopped (overlay hidden); the first reading after it restarts decides afresh. */
+    public void stop() {
+        clearPending();
+        level = LEVEL_UNKNOWN;
+    }
+
+    public int level() { return level; }
+
+    public long getReadingCount() { return readings; }
+
+    /** Dwell-confirmed switches; the first decision after a start is not one. */
+    public long getSwitchCount() { return switches; }
+
+    private void commitPending(long now) {
+        if (now - pendingSince < dwell(pending)) return;
+        int target = pending;
+        clearPending();
+        switches++;
+        setLevel(target);
+    }
+
+    private void setLevel(int newLevel) {
+        if (newLevel == level) return;
+        level = newLevel;
+        onLevelChanged.run();
+    }
+
+    private void clearPending() {
+        pending = LEVEL_UNKNOWN;
+        scheduler.remove(check);
+    }
+
+    private long dwell(int target) {
+        return target == LEVEL_NIGHT ? toNightMillis : toDayMillis;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.carclock.core;
+
+/** Wall-clock time source, swappable for a virtual clock in simulations. */
+public interface Clock {
+
+    Clock SYSTEM = System::currentTimeMillis;
+
+    long currentTimeMillis();
+}
@@ -0,0 +1,32 @@
+package com.example.carclock.core;
+
+/** Command actions understood by {@link CommandReducer}; the values are the public Intent actions. */
+public final class ClockCommands {
+
+    public static final String TOGGLE_VISIBILITY = "com.example.carclock.ACTION_TOGGLE_VISIBILITY";
+    public static final String TOGGLE_PASSTHROUGH = "com.example.carclock.ACTION_TOGGLE_PASSTHROUGH";
+    public static final String INCREASE_SIZE = "com.example.carclock.ACTION_INCREASE_SIZE";
+    public static final String DECREASE_SIZE = "com.example.carclock.ACTION_DECREASE_SIZE";
+    public static final String CHANGE_STYLE = "com.example.carclock.ACTION_CHANGE_STYLE";
+    public static final String TOGGLE_SECONDS = "com.example.carclock.ACTION_TOGGLE_SECONDS";
+    public static final String TOGGLE_BG = "com.example.carclock.ACTION_TOGGLE_BG";
+    public static final String TOGGLE_WEIGHT = "com.example.carclock.ACTION_TOGGLE_WEIGHT";
+    public static final String RESET_POSITION = "com.example.carclock.ACTION_RESET_POSITION";
+    public static final String TOGGLE_ORIENTATION = "com.example.carclock.ACTION_TOGGLE_ORIENTATION";
+    public static final String TOGGLE_TOASTS = "com.example.carclock.ACTION_TOGGLE_TOASTS";
+    public static final String SET_VISIBLE = "com.example.carclock.ACTION_SET_VISIBLE";
+    public static final String SET_BLOCKING = "com.example.carclock.ACTION_SET_BLOCKING";
+    public static final String SET_OPACITY = "com.example.carclock.ACTION_SET_OPACITY";
+    public static final String TOGGLE_SNAP = "com.example.carclock.ACTION_TOGGLE_SNAP";
+    public static final String TOGGLE_CLICK_MODE = "com.example.carclock.ACTION_TOGGLE_CLICK_MODE";
+    public static final String TOGGLE_DATE = "com.example.carclock.ACTION_TOGGLE_DATE";
+    public static final String TOGGLE_WEEKDAY = "com.example.carclock.ACTION_TOGGLE_WEEKDAY";
+    public static final String SET_MODE = "com.example.carclock.ACTION_SET_MODE";
+    public static final String TIMER_START = "com.example.carclock.ACTION_TIMER_START";
+    public static final String TIMER_PAUSE = "com.example.carclock.ACTION_TIMER_PAUSE";
+    public static final String TIMER_RESET = "com.example.carclock.ACTION_TIMER_RESET";
+    public static final String TIMER_SET_DURATION = "com.example.carclock.ACTION_TIMER_SET_DURATION";
+    public static final String TOGGLE_AUTO_STYLE = "com.example.carclock.ACTION_TOGGLE_AUTO_STYLE";
+
+    private ClockCommands() {}
+}
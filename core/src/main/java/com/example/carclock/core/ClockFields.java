@@ -0,0 +1,119 @@
+package com.example.carclock.core;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.TextStyle;
+import java.util.Locale;
+
+/**
+ * The optional fields next to the time: date, weekday and a second zone. Each field keeps
+ * the wall-clock range its text is valid for, so a tick costs two comparisons and only a
+ * boundary (the minute for the zone, local midnight for the date) formats anything. The
+ * second zone's offset comes from a {@link TimeFormatter}, cached until its next transition.
+ */
+public final class ClockFields {
+
+    public static final int FIELD_DATE = 0;
+    public static final int FIELD_WEEKDAY = 1;
+    public static final int FIELD_ZONE = 2;
+    public static final int FIELD_COUNT = 3;
+
+    private static final long MINUTE = 60_000L;
+
+    private final Locale locale;
+    private final String[] text = new String[FIELD_COUNT];
+    private final long[] updates = new long[FIELD_COUNT];
+
+    private boolean showDate, showWeekday;
+    private ZoneId localZone = ZoneId.systemDefault();
+    private ZoneId secondZone;
+    private String secondLabel = "";
+    private final TimeFormatter secondFormatter = new TimeFormatter();
+
+    // [from, until) in epoch ms; an empty range forces the next update
+    private long dayFrom = Long.MAX_VALUE, dayUntil = Long.MIN_VALUE;
+    private long minuteFrom = Long.MAX_VALUE, minuteUntil = Long.MIN_VALUE;
+    private boolean reconfigured = false;
+
+    public ClockFields(Locale locale) {
+        this.locale = locale;
+    }
+
+    /**
+     * @param secondZone zone id for the second clock, empty (or unknown) for none
+     * @param label shown before the second zone's time; the city of the zone id if empty
+     * @return true if anything changed; the next {@link #update} re-formats every field
+     */
+    public boolean configure(boolean showDate, boolean showWeekday, String secondZone, String label) {
+        ZoneId zone = CommandReducer.parseZone(secondZone);
+        if (label == null || label.isEmpty()) label = zone == null ? "" : cityOf(zone);
+        if (showDate == this.showDate && showWeekday == this.showWeekday
+                && (zone == null ? this.secondZone == null : zone.equals(this.secondZone))
+                && label.equals(secondLabel)) {
+            return false;
+        }
+        this.showDate = showDate;
+        this.showWeekday = showWeekday;
+        this.secondZone = zone;
+        this.secondLabel = label;
+        if (zone != null) secondFormatter.setZone(zone);
+        invalidate();
+        return true;
+    }
+
+    /** Re-reads the system default zone the date follows, e.g. after ACTION_TIMEZONE_CHANGED. */
+    public void resetZone() {
+        localZone = ZoneId.systemDefault();
+        invalidate();
+    }
+
+    /** @return true if the text of any field changed */
+    public boolean update(long epochMillis) {
+        boolean changed = reconfigured;
+        reconfigured = false;
+        if ((showDate || showWeekday) && (epochMillis < dayFrom || epochMillis >= dayUntil)) {
+            // Once a day (or after a clock change), so java.time is fine here
+            LocalDate day = Instant.ofEpochMilli(epochMillis).atZone(localZone).toLocalDate();
+            dayFrom = day.atStartOfDay(localZone).toInstant().toEpochMilli();
+            dayUntil = day.plusDays(1).atStartOfDay(localZone).toInstant().toEpochMilli();
+            changed |= set(FIELD_DATE, showDate ? day.toString() : null);
+            changed |= set(FIELD_WEEKDAY, showWeekday ? day.getDayOfWeek().getDisplayName(TextStyle.SHORT, locale) : null);
+        }
+        if (secondZone != null && (epochMillis < minuteFrom || epochMillis >= minuteUntil)) {
+            minuteFrom = Math.floorDiv(epochMillis, MINUTE) * MINUTE;
+            minuteUntil = minuteFrom + MINUTE;
+            secondFormatter.format(epochMillis, false, false);
+            String time = new String(secondFormatter.buffer(), 0, secondFormatter.length());
+            changed |= set(FIELD_ZONE, secondLabel.isEmpty() ? time : secondLabel + " " + time);
+        }
+        return changed;
+    }
+
+    /** The field's current text, or null if it's turned off. */
+    public String text(int field) { return text[field]; }
+
+    /** How many times the field was formatted, for checking the cadence. */
+    public long getUpdateCount(int field) { return updates[field]; }
+
+    private void invalidate() {
+        dayFrom = minuteFrom = Long.MAX_VALUE;
+        dayUntil = minuteUntil = Long.MIN_VALUE;
+        if (!showDate) text[FIELD_DATE] = null;
+        if (!showWeekday) text[FIELD_WEEKDAY] = null;
+        if (secondZone == null) text[FIELD_ZONE] = null;
+        reconfigured = true;
+    }
+
+    private boolean set(int field, String value) {
+        if (value != null) updates[field]++;
+        if (value == null ? text[field] == null : value.equals(text[field])) return false;
+        text[field] = value;
+        return true;
+    }
+
+    private static String cityOf(ZoneId zone) {
+        String id = zone.getId();
+        return id.substring(id.lastIndexOf('/') + 1).replace('_', ' ');
+    }
+}
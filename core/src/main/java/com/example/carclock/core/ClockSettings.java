@@ -0,0 +1,166 @@
+package com.example.carclock.core;
+
+/**
+ * The overlay's user-facing settings, as read and written by {@link CommandReducer}.
+ * {@link #changesFrom} tells the caller which effects a batch of commands actually needs.
+ */
+public final class ClockSettings {
+
+    // changesFrom bits, one per group of fields that share an effect
+    public static final int CHANGED_TEXT_SIZE = 1;
+    public static final int CHANGED_STYLE = 1 << 1;
+    public static final int CHANGED_POSITION = 1 << 2;
+    public static final int CHANGED_BG = 1 << 3;
+    public static final int CHANGED_BOLD = 1 << 4;
+    public static final int CHANGED_FORMAT = 1 << 5; // vertical, showSeconds
+    public static final int CHANGED_OPACITY = 1 << 6;
+    public static final int CHANGED_VISIBLE = 1 << 7;
+    public static final int CHANGED_PASSTHROUGH = 1 << 8;
+    public static final int CHANGED_TOASTS = 1 << 9;
+    public static final int CHANGED_SNAP = 1 << 10;
+    public static final int CHANGED_CLICK_MODE = 1 << 11;
+    public static final int CHANGED_FIELDS = 1 << 12; // date, weekday, second zone
+    public static final int CHANGED_MODE = 1 << 13;
+    public static final int CHANGED_TIMER = 1 << 14; // running, anchor, elapsed, countdown length
+    public static final int CHANGED_AUTO_STYLE = 1 << 15;
+    public static final int CHANGED_AMBIENT = 1 << 16;
+    public static final int CHANGED_ALL = (1 << 17) - 1;
+    /** What {@link #copyLayoutFrom} copies; the rest is {@link #CHANGED_SHARED}. */
+    public static final int CHANGED_LAYOUT = CHANGED_TEXT_SIZE | CHANGED_STYLE | CHANGED_POSITION;
+    public static final int CHANGED_SHARED = CHANGED_ALL & ~CHANGED_LAYOUT;
+
+    public static final int MODE_CLOCK = 0;
+    public static final int MODE_STOPWATCH = 1;
+    public static final int MODE_COUNTDOWN = 2;
+    /** EXTRA_MODE values, indexed by MODE_*. */
+    public static final String[] MODE_NAMES = { "clock", "stopwatch", "countdown" };
+
+    public float textSize = 24f; // sp
+    public int styleIndex = 0;
+    public boolean bgVisible = true;
+    public boolean bold = false;
+    public boolean vertical = false;
+    public boolean showSeconds = true;
+    public int opacity = 100; // 0-100
+    public int x = 0;
+    public int y = 0;
+    public boolean visible = true;
+    public boolean passthrough = false;
+    public boolean showToasts = true;
+    public boolean snapToEdges = false;
+    public boolean singleClickOnly = false;
+    public boolean showDate = false;
+    public boolean showWeekday = false;
+    public String secondZone = ""; // zone id, empty for none
+    public String secondZoneLabel = ""; // empty = the zone's city
+    public int mode = MODE_CLOCK;
+    // Timer time is anchored to elapsedRealtime, never counted up, so it is exact after a
+    // process restart and needs no wakeups of its own
+    public boolean timerRunning = false;
+    public long timerAnchor = 0; // elapsedRealtime at which the running timer read 0
+    public long timerElapsed = 0; // while paused
+    public long countdownMillis = 5 * 60_000L;
+    public boolean autoStyle = false; // style and opacity follow the ambient light
+    // AmbientPolicy.LEVEL_*; runtime only, never saved, so the user's own style and opacity survive it
+    public int ambientLevel = AmbientPolicy.LEVEL_UNKNOWN;
+
+    /** @return the CHANGED_* bits of every field that differs from {@code before}; 0 for a no-op */
+    public int changesFrom(ClockSettings before) {
+        int changes = 0;
+        if (textSize != before.textSize) changes |= CHANGED_TEXT_SIZE;
+        if (styleIndex != before.styleIndex) changes |= CHANGED_STYLE;
+        if (x != before.x || y != before.y) changes |= CHANGED_POSITION;
+        if (bgVisible != before.bgVisible) changes |= CHANGED_BG;
+        if (bold != before.bold) changes |= CHANGED_BOLD;
+        if (vertical != before.vertical || showSeconds != before.showSeconds) changes |= CHANGED_FORMAT;
+        if (opacity != before.opacity) changes |= CHANGED_OPACITY;
+        if (visible != before.visible) changes |= CHANGED_VISIBLE;
+        if (passthrough != before.passthrough) changes |= CHANGED_PASSTHROUGH;
+        if (showToasts != before.showToasts) changes |= CHANGED_TOASTS;
+        if (snapToEdges != before.snapToEdges) changes |= CHANGED_SNAP;
+        if (singleClickOnly != before.singleClickOnly) changes |= CHANGED_CLICK_MODE;
+        if (showDate != before.showDate || showWeekday != before.showWeekday
+                || !secondZone.equals(before.secondZone) || !secondZoneLabel.equals(before.secondZoneLabel)) {
+            changes |= CHANGED_FIELDS;
+        }
+        if (mode != before.mode) changes |= CHANGED_MODE;
+        if (timerRunning != before.timerRunning || timerAnchor != before.timerAnchor
+                || timerElapsed != before.timerElapsed || countdownMillis != before.countdownMillis) {
+            changes |= CHANGED_TIMER;
+        }
+        if (autoStyle != before.autoStyle) changes |= CHANGED_AUTO_STYLE;
+        if (ambientLevel != before.ambientLevel) changes |= CHANGED_AMBIENT;
+        return changes;
+    }
+
+    /** The style to draw: the ambient light's while auto style has a level, the user's otherwise. */
+    public int shownStyleIndex(StyleTable styles) {
+        if (!followsAmbient()) return styleIndex;
+        return styles.indexOf(ambientLevel == AmbientPolicy.LEVEL_NIGHT ? AmbientPolicy.NIGHT_STYLE : AmbientPolicy.DAY_STYLE,
+                styleIndex);
+    }
+
+    /** The opacity to draw, like {@link #shownStyleIndex}. */
+    public int shownOpacity() {
+        if (!followsAmbient()) return opacity;
+        return ambientLevel == AmbientPolicy.LEVEL_NIGHT ? AmbientPolicy.NIGHT_OPACITY : AmbientPolicy.DAY_OPACITY;
+    }
+
+    private boolean followsAmbient() {
+        return autoStyle && ambientLevel != AmbientPolicy.LEVEL_UNKNOWN;
+    }
+
+    /** Stopwatch time at {@code elapsedRealtime}; a countdown stops at its length. */
+    public long timerElapsed(long elapsedRealtime) {
+        long elapsed = timerRunning ? elapsedRealtime - timerAnchor : timerElapsed;
+        return mode == MODE_COUNTDOWN ? Math.min(elapsed, countdownMillis) : elapsed;
+    }
+
+    /** What the timer shows: time so far for the stopwatch, time left for the countdown. */
+    public long timerDisplayMillis(long elapsedRealtime) {
+        long elapsed = timerElapsed(elapsedRealtime);
+        return mode == MODE_COUNTDOWN ? countdownMillis - elapsed : elapsed;
+    }
+
+    public boolean countdownFinished(long elapsedRealtime) {
+        return mode == MODE_COUNTDOWN && timerElapsed(elapsedRealtime) >= countdownMillis;
+    }
+
+    public void copyFrom(ClockSettings other) {
+        copyLayoutFrom(other);
+        copySharedFrom(other);
+    }
+
+    /** The fields each display's overlay keeps for itself. */
+    public void copyLayoutFrom(ClockSettings other) {
+        textSize = other.textSize;
+        styleIndex = other.styleIndex;
+        x = other.x;
+        y = other.y;
+    }
+
+    /** Everything but the layout; shared by the overlays on all displays. */
+    public void copySharedFrom(ClockSettings other) {
+        bgVisible = other.bgVisible;
+        bold = other.bold;
+        vertical = other.vertical;
+        showSeconds = other.showSeconds;
+        opacity = other.opacity;
+        visible = other.visible;
+        passthrough = other.passthrough;
+        showToasts = other.showToasts;
+        snapToEdges = other.snapToEdges;
+        singleClickOnly = other.singleClickOnly;
+        showDate = other.showDate;
+        showWeekday = other.showWeekday;
+        secondZone = other.secondZone;
+        secondZoneLabel = other.secondZoneLabel;
+        mode = other.mode;
+        timerRunning = other.timerRunning;
+        timerAnchor = other.timerAnchor;
+        timerElapsed = other.timerElapsed;
+        countdownMillis = other.countdownMillis;
+        autoStyle = other.autoStyle;
+        ambientLevel = other.ambientLevel;
+    }
+}
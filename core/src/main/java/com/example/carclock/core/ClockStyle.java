@@ -0,0 +1,21 @@
+package com.example.carclock.core;
+
+/** One immutable entry of the style table; colours are pre-parsed ARGB ints. */
+public final class ClockStyle {
+
+    public final String name;
+    public final int panelColor;
+    public final int textColor;
+    public final int textColorNoPanel; // used when the background is toggled off
+    public final int strokeColor;
+    public final float strokeWidthPx;
+
+    public ClockStyle(String name, int panelColor, int textColor, int textColorNoPanel, int strokeColor, float strokeWidthPx) {
+        this.name = name;
+        this.panelColor = panelColor;
+        this.textColor = textColor;
+        this.textColorNoPanel = textColorNoPanel;
+        this.strokeColor = strokeColor;
+        this.strokeWidthPx = strokeWidthPx;
+    }
+}
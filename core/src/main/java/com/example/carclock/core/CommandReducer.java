@@ -0,0 +1,143 @@
+package com.example.carclock.core;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+
+/**
+ * Applies command actions to {@link ClockSettings}. It only changes fields; pushing the
+ * result to the view, window and prefs is up to the caller, which lets a batch of
+ * commands be applied with a single commit.
+ */
+public final class CommandReducer {
+
+    public static final float MIN_TEXT_SIZE = 12f;
+    public static final float SIZE_STEP = 5f;
+    public static final long MAX_COUNTDOWN_MILLIS = 99 * 3_600_000L + 59 * 60_000L + 59_000L;
+
+    private final StyleTable styles;
+    private int displayWidth, displayHeight;
+    private int viewWidth, viewHeight;
+    private long elapsedRealtime;
+
+    public CommandReducer(StyleTable styles) {
+        this.styles = styles;
+    }
+
+    /** Sizes used by RESET_POSITION to centre the overlay. */
+    public void setViewport(int displayWidth, int displayHeight, int viewWidth, int viewHeight) {
+        this.displayWidth = displayWidth;
+        this.displayHeight = displayHeight;
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+    }
+
+    /** The monotonic time the timer commands start or pause at. */
+    public void setElapsedRealtime(long elapsedRealtime) {
+        this.elapsedRealtime = elapsedRealtime;
+    }
+
+    /** @return false if the action isn't a settings command */
+    public boolean apply(ClockSettings s, String action) {
+        switch (action) {
+            case ClockCommands.TOGGLE_VISIBILITY: s.visible = !s.visible; return true;
+            case ClockCommands.TOGGLE_PASSTHROUGH: s.passthrough = !s.passthrough; return true;
+            case ClockCommands.INCREASE_SIZE: s.textSize += SIZE_STEP; return true;
+            case ClockCommands.DECREASE_SIZE: s.textSize = clampTextSize(s.textSize - SIZE_STEP); return true;
+            case ClockCommands.CHANGE_STYLE: s.styleIndex = styles.next(s.styleIndex); return true;
+            case ClockCommands.TOGGLE_SECONDS: s.showSeconds = !s.showSeconds; return true;
+            case ClockCommands.TOGGLE_BG: s.bgVisible = !s.bgVisible; return true;
+            case ClockCommands.TOGGLE_WEIGHT: s.bold = !s.bold; return true;
+            case ClockCommands.RESET_POSITION:
+                s.x = (displayWidth - viewWidth) / 2;
+                s.y = (displayHeight - viewHeight) / 2;
+                return true;
+            case ClockCommands.TOGGLE_ORIENTATION: s.vertical = !s.vertical; return true;
+            case ClockCommands.TOGGLE_TOASTS: s.showToasts = !s.showToasts; return true;
+            case ClockCommands.SET_VISIBLE: s.visible = true; return true;
+            case ClockCommands.SET_BLOCKING: s.passthrough = false; return true;
+            case ClockCommands.SET_OPACITY: return true; // the value comes with the command, see setOpacity
+            case ClockCommands.TOGGLE_SNAP: s.snapToEdges = !s.snapToEdges; return true;
+            case ClockCommands.TOGGLE_CLICK_MODE: s.singleClickOnly = !s.singleClickOnly; return true;
+            case ClockCommands.TOGGLE_DATE: s.showDate = !s.showDate; return true;
+            case ClockCommands.TOGGLE_WEEKDAY: s.showWeekday = !s.showWeekday; return true;
+            case ClockCommands.TIMER_START: startTimer(s); return true;
+            case ClockCommands.TIMER_PAUSE:
+                if (s.timerRunning) {
+                    s.timerElapsed = s.timerElapsed(elapsedRealtime);
+                    s.timerRunning = false;
+                }
+                return true;
+            case ClockCommands.TIMER_RESET: resetTimer(s); return true;
+            case ClockCommands.SET_MODE: // the value comes with the command, see setMode
+            case ClockCommands.TIMER_SET_DURATION: return true; // see setCountdown
+            case ClockCommands.TOGGLE_AUTO_STYLE: s.autoStyle = !s.autoStyle; return true;
+            default: return false;
+        }
+    }
+
+    public void setTextSize(ClockSettings s, float textSize) { s.textSize = clampTextSize(textSize); }
+
+    public void setStyleIndex(ClockSettings s, int index) { s.styleIndex = Math.floorMod(index, styles.size()); }
+
+    public void setOpacity(ClockSettings s, int opacity) { s.opacity = Math.max(0, Math.min(100, opacity)); }
+
+    /**
+     * The ambient light picked a level. It only changes what is shown (see
+     * {@link ClockSettings#shownStyleIndex}); the user's style and opacity stay as they are.
+     */
+    public void setAmbient(ClockSettings s, int level) { s.ambientLevel = level; }
+
+    /** Unknown names leave the mode as it is. Switching modes resets the timer. */
+    public void setMode(ClockSettings s, String name) {
+        for (int mode = 0; mode < ClockSettings.MODE_NAMES.length; mode++) {
+            if (!ClockSettings.MODE_NAMES[mode].equals(name)) continue;
+            if (s.mode != mode) resetTimer(s);
+            s.mode = mode;
+            return;
+        }
+    }
+
+    /** Switches to a stopped countdown of {@code millis}, clamped to 1 s .. 99:59:59. */
+    public void setCountdown(ClockSettings s, long millis) {
+        s.mode = ClockSettings.MODE_COUNTDOWN;
+        s.countdownMillis = Math.max(1000, Math.min(MAX_COUNTDOWN_MILLIS, millis));
+        resetTimer(s);
+    }
+
+    // The clock has no timer to start, so START means the stopwatch; a finished countdown starts over
+    private void startTimer(ClockSettings s) {
+        if (s.mode == ClockSettings.MODE_CLOCK) s.mode = ClockSettings.MODE_STOPWATCH;
+        if (s.timerRunning) return;
+        if (s.countdownFinished(elapsedRealtime)) s.timerElapsed = 0;
+        s.timerAnchor = elapsedRealtime - s.timerElapsed;
+        s.timerRunning = true;
+    }
+
+    private static void resetTimer(ClockSettings s) {
+        s.timerRunning = false;
+        s.timerAnchor = 0;
+        s.timerElapsed = 0;
+    }
+
+    /** An unknown zone id leaves the second zone as it was; empty removes it. */
+    public void setSecondZone(ClockSettings s, String zoneId, String label) {
+        String id = zoneId == null ? "" : zoneId.trim();
+        if (!id.isEmpty() && parseZone(id) == null) return;
+        s.secondZone = id;
+        s.secondZoneLabel = label == null ? "" : label.trim();
+    }
+
+    /** @return null for an empty or unknown id */
+    static ZoneId parseZone(String zoneId) {
+        if (zoneId == null || zoneId.isEmpty()) return null;
+        try {
+            return ZoneId.of(zoneId);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    private static float clampTextSize(float size) {
+        return Math.max(MIN_TEXT_SIZE, size);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.carclock.core;
+
+/**
+ * Keeps only the latest of a burst of non-negative values until the next frame, so a
+ * slider that reports faster than the display refreshes costs one dispatch per frame
+ * and the final value is never dropped.
+ */
+public final class FrameCoalescer {
+
+    public static final int NONE = -1;
+
+    private int pending = NONE;
+
+    /** @return true if nothing was pending, so the caller has to schedule a frame */
+    public boolean offer(int value) {
+        if (value < 0) throw new IllegalArgumentException("value must not be negative");
+        boolean schedule = pending == NONE;
+        pending = value;
+        return schedule;
+    }
+
+    /** The latest value offered since the last take, or {@link #NONE}. */
+    public int take() {
+        int value = pending;
+        pending = NONE;
+        return value;
+    }
+
+    public boolean hasPending() { return pending != NONE; }
+}
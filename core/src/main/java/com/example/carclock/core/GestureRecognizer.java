@@ -0,0 +1,129 @@
+package com.example.carclock.core;
+
+/**
+ * Click / double-click / long-press / drag state machine for the overlay. It has no
+ * View or Handler dependencies: events and timeouts are fed in with explicit times and
+ * timers are requested through the callback, so it can be driven by synthetic input.
+ */
+public final class GestureRecognizer {
+
+    public static final int TIMER_LONG_PRESS = 0;
+    public static final int TIMER_CLICK = 1;
+
+    public static final int GESTURE_CLICK = 0;
+    public static final int GESTURE_DOUBLE_CLICK = 1;
+    public static final int GESTURE_LONG_PRESS = 2;
+    public static final int GESTURE_COUNT = 3;
+
+    public interface Callback {
+        void onClick();
+        void onDoubleClick();
+        void onLongPress();
+        void onDragStart();
+        void onDrag(float dx, float dy);
+        void onDragEnd();
+        void scheduleTimer(int timer, long delayMillis);
+        void cancelTimer(int timer);
+    }
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_PRESSED = 1;
+    private static final int STATE_DRAGGING = 2;
+    private static final int STATE_LONG_PRESSED = 3;
+
+    private final Callback callback;
+    private final float touchSlop;
+    private final long longPressTimeout;
+    private final long doubleTapTimeout;
+    private boolean singleClickOnly = false;
+
+    private int state = STATE_IDLE;
+    private boolean clickPending = false;
+    private float downX, downY;
+    private long gestureStart; // first down of the gesture, kept across the two taps of a double click
+    private long lastLatency = 0;
+
+    public GestureRecognizer(Callback callback, float touchSlop, long longPressTimeout, long doubleTapTimeout) {
+        this.callback = callback;
+        this.touchSlop = touchSlop;
+        this.longPressTimeout = longPressTimeout;
+        this.doubleTapTimeout = doubleTapTimeout;
+    }
+
+    /** Single-click-only mode reports clicks on ACTION_UP instead of waiting for a second tap. */
+    public void setSingleClickOnly(boolean singleClickOnly) {
+        this.singleClickOnly = singleClickOnly;
+        if (singleClickOnly && clickPending) {
+            clickPending = false;
+            callback.cancelTimer(TIMER_CLICK);
+        }
+    }
+
+    public void onDown(long time, float x, float y) {
+        if (!clickPending) gestureStart = time;
+        state = STATE_PRESSED;
+        downX = x;
+        downY = y;
+        callback.scheduleTimer(TIMER_LONG_PRESS, longPressTimeout);
+    }
+
+    public void onMove(long time, float x, float y) {
+        float dx = x - downX;
+        float dy = y - downY;
+        if (state == STATE_PRESSED && (Math.abs(dx) > touchSlop || Math.abs(dy) > touchSlop)) {
+            callback.cancelTimer(TIMER_LONG_PRESS);
+            state = STATE_DRAGGING;
+            callback.onDragStart();
+        }
+        if (state == STATE_DRAGGING) callback.onDrag(dx, dy);
+    }
+
+    public void onUp(long time, float x, float y) {
+        callback.cancelTimer(TIMER_LONG_PRESS);
+        int previous = state;
+        state = STATE_IDLE;
+        if (previous == STATE_DRAGGING) {
+            callback.onDragEnd();
+        } else if (previous == STATE_PRESSED) {
+            if (singleClickOnly) {
+                fire(GESTURE_CLICK, time);
+            } else if (clickPending) {
+                clickPending = false;
+                callback.cancelTimer(TIMER_CLICK);
+                fire(GESTURE_DOUBLE_CLICK, time);
+            } else {
+                clickPending = true;
+                callback.scheduleTimer(TIMER_CLICK, doubleTapTimeout);
+            }
+        }
+    }
+
+    public void onCancel() {
+        callback.cancelTimer(TIMER_LONG_PRESS);
+        if (state == STATE_DRAGGING) callback.onDragEnd();
+        state = STATE_IDLE;
+    }
+
+    /** Called by the host when a timer requested through {@link Callback#scheduleTimer} expires. */
+    public void onTimer(int timer, long time) {
+        if (timer == TIMER_LONG_PRESS && state == STATE_PRESSED) {
+            state = STATE_LONG_PRESSED;
+            fire(GESTURE_LONG_PRESS, time);
+        } else if (timer == TIMER_CLICK && clickPending) {
+            clickPending = false;
+            fire(GESTURE_CLICK, time);
+        }
+    }
+
+    /** Time from the last reported gesture's first ACTION_DOWN to its callback. */
+    public long getLastLatencyMillis() { return lastLatency; }
+
+    private void fire(int gesture, long time) {
+        lastLatency = time - gestureStart;
+        switch (gesture) {
+            case GESTURE_CLICK: callback.onClick(); break;
+            case GESTURE_DOUBLE_CLICK: callback.onDoubleClick(); break;
+            case GESTURE_LONG_PRESS: callback.onLongPress(); break;
+        }
+    }
+}
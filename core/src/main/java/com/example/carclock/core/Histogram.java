@@ -0,0 +1,76 @@
+package com.example.carclock.core;
+
+import java.io.PrintWriter;
+
+/**
+ * Fixed-bucket histogram for hot-path measurements. Recording only bumps counters, so it
+ * can run every tick or every frame without allocating. Not thread-safe: record and read
+ * from the same thread.
+ */
+public final class Histogram {
+
+    private final String unit;
+    private final long[] upperBounds; // inclusive; values above the last bound go to an overflow bucket
+    private final long[] buckets;
+
+    private long count = 0;
+    private long sum = 0;
+    private long max = Long.MIN_VALUE;
+    private long last = 0;
+
+    public Histogram(String unit, long... upperBounds) {
+        this.unit = unit;
+        this.upperBounds = upperBounds;
+        this.buckets = new long[upperBounds.length + 1];
+    }
+
+    public void record(long value) {
+        int i = 0;
+        while (i < upperBounds.length && value > upperBounds[i]) i++;
+        buckets[i]++;
+        count++;
+        sum += value;
+        last = value;
+        if (value > max) max = value;
+    }
+
+    public long getCount() { return count; }
+
+    public long getLast() { return last; }
+
+    public long getMax() { return count == 0 ? 0 : max; }
+
+    public long getMean() { return count == 0 ? 0 : sum / count; }
+
+    public String getUnit() { return unit; }
+
+    /** Copy of the bucket counts; the last entry is the overflow bucket. */
+    public long[] getBuckets() { return buckets.clone(); }
+
+    public long[] getUpperBounds() { return upperBounds.clone(); }
+
+    public void dump(PrintWriter pw, String name) {
+        pw.print("  ");
+        pw.print(name);
+        pw.print(": count=");
+        pw.print(count);
+        pw.print(" last=");
+        pw.print(last);
+        pw.print(" mean=");
+        pw.print(getMean());
+        pw.print(" max=");
+        pw.print(getMax());
+        pw.print(' ');
+        pw.println(unit);
+        if (count == 0) return;
+        pw.print("    ");
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] == 0) continue;
+            pw.print(i < upperBounds.length ? "<=" + upperBounds[i] : ">" + upperBounds[upperBounds.length - 1]);
+            pw.print(':');
+            pw.print(buckets[i]);
+            pw.print(' ');
+        }
+        pw.println();
+    }
+}
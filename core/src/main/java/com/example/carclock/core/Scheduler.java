@@ -0,0 +1,20 @@
+package com.example.carclock.core;
+
+/**
+ * Runs tasks on one thread against a monotonic time base. On Android this wraps a
+ * Handler (uptimeMillis); {@link VirtualScheduler} runs the same code in simulated time.
+ */
+public interface Scheduler {
+
+    /** Now, on the scheduler's own monotonic time base. */
+    long uptimeMillis();
+
+    void post(Runnable task);
+
+    void postAtTime(Runnable task, long uptimeMillis);
+
+    void postDelayed(Runnable task, long delayMillis);
+
+    /** Removes every pending run of {@code task}. */
+    void remove(Runnable task);
+}
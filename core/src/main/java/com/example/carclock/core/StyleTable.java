@@ -0,0 +1,34 @@
+package com.example.carclock.core;
+
+/**
+ * The ordered set of clock styles. Built once (from JSON on Android); switching styles
+ * afterwards is an index lookup with no parsing or allocation.
+ */
+public final class StyleTable {
+
+    private final ClockStyle[] styles;
+
+    public StyleTable(ClockStyle... styles) {
+        if (styles.length == 0) throw new IllegalArgumentException("StyleTable needs at least one style");
+        this.styles = styles.clone();
+    }
+
+    public int size() { return styles.length; }
+
+    /** Wraps out-of-range indices, e.g. a saved index from a longer style table. */
+    public ClockStyle get(int index) {
+        return styles[Math.floorMod(index, styles.length)];
+    }
+
+    /** @return the index of the style called {@code name}, or {@code fallback} */
+    public int indexOf(String name, int fallback) {
+        for (int i = 0; i < styles.length; i++) {
+            if (styles[i].name.equals(name)) return i;
+        }
+        return fallback;
+    }
+
+    public int next(int index) {
+        return Math.floorMod(index + 1, styles.length);
+    }
+}
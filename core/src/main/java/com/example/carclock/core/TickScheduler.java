@@ -0,0 +1,71 @@
+package com.example.carclock.core;
+
+/**
+ * Runs the clock tick on the next wall-clock second (or minute) boundary instead of
+ * a fixed postDelayed(1000), so the display never lags the real second and the looper
+ * only wakes when the text can actually change.
+ */
+public final class TickScheduler {
+
+    public static final long PERIOD_SECOND = 1000L;
+    public static final long PERIOD_MINUTE = 60_000L;
+
+    private final Scheduler scheduler;
+    private final Clock clock;
+    private final Runnable onTick;
+
+    private long periodMillis = PERIOD_SECOND;
+    private boolean running = false;
+    private long targetWallTime = 0; // 0 = the pending tick is an immediate resync, not a boundary
+
+    // Jitter = how far from the boundary itself a boundary tick actually ran
+    private final Histogram jitterMillis = new Histogram("ms", 1, 2, 5, 10, 20, 50, 100, 250, 500, 1000);
+
+    private final Runnable tickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            long now = clock.currentTimeMillis();
+            if (targetWallTime != 0) jitterMillis.record(Math.abs(now - targetWallTime));
+            onTick.run();
+            scheduleNext(now);
+        }
+    };
+
+    public TickScheduler(Scheduler scheduler, Clock clock, Runnable onTick) {
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.onTick = onTick;
+    }
+
+    /** Ticks immediately, then on every {@code periodMillis} boundary of the wall clock. */
+    public void start(long periodMillis) {
+        this.periodMillis = periodMillis;
+        running = true;
+        resync();
+    }
+
+    /** Drops the pending tick and re-aligns, e.g. after ACTION_TIME_SET. No-op while stopped. */
+    public void resync() {
+        if (!running) return;
+        scheduler.remove(tickRunnable);
+        targetWallTime = 0;
+        scheduler.post(tickRunnable);
+    }
+
+    public void stop() {
+        running = false;
+        scheduler.remove(tickRunnable);
+        targetWallTime = 0;
+    }
+
+    public boolean isRunning() { return running; }
+
+    public Histogram getJitter() { return jitterMillis; }
+
+    private void scheduleNext(long now) {
+        // Epoch-aligned boundaries line up with local seconds/minutes for every real zone offset
+        long next = (now / periodMillis + 1) * periodMillis;
+        targetWallTime = next;
+        scheduler.postAtTime(tickRunnable, scheduler.uptimeMillis() + (next - now));
+    }
+}
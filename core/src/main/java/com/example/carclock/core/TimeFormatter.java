@@ -0,0 +1,127 @@
+package com.example.carclock.core;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Writes HH:mm[:ss], or a stopwatch/countdown reading, into a reusable char buffer
+ * without allocating per tick. The zone offset is cached until the next zone transition,
+ * so only a DST change or {@link #resetZone()} does any real work.
+ */
+public final class TimeFormatter {
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    private final char[] buffer = new char[8];
+    private int length = 0;
+
+    private ZoneRules rules;
+    private long offsetMillis;
+    private long offsetValidFrom = Long.MAX_VALUE;
+    private long offsetValidUntil = Long.MIN_VALUE;
+
+    public TimeFormatter() {
+        resetZone();
+    }
+
+    /** Re-reads the system default zone, e.g. after ACTION_TIMEZONE_CHANGED. */
+    public void resetZone() {
+        setZone(ZoneId.systemDefault());
+    }
+
+    public void setZone(ZoneId zone) {
+        rules = zone.getRules();
+        offsetValidFrom = Long.MAX_VALUE;
+        offsetValidUntil = Long.MIN_VALUE;
+    }
+
+    /**
+     * Formats {@code epochMillis} into {@link #buffer()}. Vertical mode puts each
+     * field on its own line instead of separating them with ':'.
+     *
+     * @return true if the text differs from the previous call
+     */
+    public boolean format(long epochMillis, boolean showSeconds, boolean vertical) {
+        long local = epochMillis + offsetAt(epochMillis);
+        int secondOfDay = (int) (Math.floorMod(local, MILLIS_PER_DAY) / 1000);
+        char separator = vertical ? '\n' : ':';
+        int newLength = showSeconds ? 8 : 5;
+
+        boolean changed = newLength != length;
+        changed |= putTwoDigits(0, secondOfDay / 3600);
+        changed |= put(2, separator);
+        changed |= putTwoDigits(3, (secondOfDay / 60) % 60);
+        if (showSeconds) {
+            changed |= put(5, separator);
+            changed |= putTwoDigits(6, secondOfDay % 60);
+        }
+        length = newLength;
+        return changed;
+    }
+
+    /**
+     * Formats a timer reading: mm:ss.cc (hundredths) under an hour, hh:mm:ss from there on,
+     * so it fits the same eight cells as HH:mm:ss.
+     *
+     * @return true if the text differs from the previous call
+     */
+    public boolean formatDuration(long millis, boolean vertical) {
+        long centis = Math.max(0, millis) / 10;
+        char separator = vertical ? '\n' : ':';
+        boolean changed = length != 8;
+        if (centis < 360_000) {
+            changed |= putTwoDigits(0, (int) (centis / 6000));
+            changed |= put(2, separator);
+            changed |= putTwoDigits(3, (int) (centis / 100 % 60));
+            changed |= put(5, vertical ? '\n' : '.');
+            changed |= putTwoDigits(6, (int) (centis % 100));
+        } else {
+            long seconds = Math.min(centis / 100, 99 * 3600 + 59 * 60 + 59);
+            changed |= putTwoDigits(0, (int) (seconds / 3600));
+            changed |= put(2, separator);
+            changed |= putTwoDigits(3, (int) (seconds / 60 % 60));
+            changed |= put(5, separator);
+            changed |= putTwoDigits(6, (int) (seconds % 60));
+        }
+        length = 8;
+        return changed;
+    }
+
+    public char[] buffer() { return buffer; }
+
+    public int length() { return length; }
+
+    private long offsetAt(long epochMillis) {
+        if (epochMillis >= offsetValidFrom && epochMillis < offsetValidUntil) return offsetMillis;
+
+        if (rules.isFixedOffset()) {
+            offsetMillis = rules.getOffset(Instant.EPOCH).getTotalSeconds() * 1000L;
+            offsetValidFrom = Long.MIN_VALUE;
+            offsetValidUntil = Long.MAX_VALUE;
+            return offsetMillis;
+        }
+
+        // Only reached once per zone transition (or after resetZone), so allocating here is fine.
+        Instant instant = Instant.ofEpochMilli(epochMillis);
+        offsetMillis = rules.getOffset(instant).getTotalSeconds() * 1000L;
+        // +1ms so a transition exactly at epochMillis counts as the start of this range.
+        ZoneOffsetTransition previous = rules.previousTransition(instant.plusMillis(1));
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        offsetValidFrom = previous != null ? previous.toEpochSecond() * 1000L : Long.MIN_VALUE;
+        offsetValidUntil = next != null ? next.toEpochSecond() * 1000L : Long.MAX_VALUE;
+        return offsetMillis;
+    }
+
+    private boolean putTwoDigits(int index, int value) {
+        boolean changed = put(index, (char) ('0' + value / 10));
+        return put(index + 1, (char) ('0' + value % 10)) || changed;
+    }
+
+    private boolean put(int index, char c) {
+        if (buffer[index] == c) return false;
+        buffer[index] = c;
+        return true;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.carclock.core;
+
+import java.util.PriorityQueue;
+
+/**
+ * Single-threaded scheduler and clock in simulated time: nothing runs until the caller
+ * advances the time, and a day of ticks takes as long as the tasks themselves. The wall
+ * clock moves with uptime but can be jumped, like ACTION_TIME_SET on a device.
+ */
+public final class VirtualScheduler implements Scheduler, Clock {
+
+    private static final class Task implements Comparable<Task> {
+        final Runnable runnable;
+        final long when;
+        final long seq;
+
+        Task(Runnable runnable, long when, long seq) {
+            this.runnable = runnable;
+            this.when = when;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (when != other.when) return Long.compare(when, other.when);
+            return Long.compare(seq, other.seq); // FIFO for equal times, like a Looper
+        }
+    }
+
+    private final PriorityQueue<Task> queue = new PriorityQueue<>();
+    private long uptime = 0;
+    private long wallOffset;
+    private long seq = 0;
+    private long executed = 0;
+
+    public VirtualScheduler(long wallTimeMillis) {
+        this.wallOffset = wallTimeMillis;
+    }
+
+    @Override
+    public long uptimeMillis() { return uptime; }
+
+    @Override
+    public long currentTimeMillis() { return wallOffset + uptime; }
+
+    /** Jumps the wall clock without moving uptime. */
+    public void setWallTime(long wallTimeMillis) {
+        wallOffset = wallTimeMillis - uptime;
+    }
+
+    @Override
+    public void post(Runnable task) {
+        postAtTime(task, uptime);
+    }
+
+    @Override
+    public void postAtTime(Runnable task, long uptimeMillis) {
+        queue.add(new Task(task, Math.max(uptimeMillis, uptime), seq++));
+    }
+
+    @Override
+    public void postDelayed(Runnable task, long delayMillis) {
+        postAtTime(task, uptime + Math.max(0, delayMillis));
+    }
+
+    @Override
+    public void remove(Runnable task) {
+        queue.removeIf(t -> t.runnable == task);
+    }
+
+    /** Runs every task due up to {@code uptime + millis}, in order, then sets the time there. */
+    public void advanceBy(long millis) {
+        long target = uptime + millis;
+        while (!queue.isEmpty() && queue.peek().when <= target) {
+            Task task = queue.poll();
+            uptime = task.when;
+            executed++;
+            task.runnable.run();
+        }
+        uptime = target;
+    }
+
+    public int pendingCount() { return queue.size(); }
+
+    public long executedCount() { return executed; }
+}
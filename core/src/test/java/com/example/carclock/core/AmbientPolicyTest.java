@@ -0,0 +1,137 @@
+package com.example.carclock.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
+
+import org.junit.jupiter.api.Test;
+
+/** Day/night decisions on a fake, batched light sensor feed. */
+class AmbientPolicyTest {
+
+    private final Random noise = new Random(42);
+
+    @Test
+    void flickerSwitchesNothingAndATunnelSwitchesOnceEachWay() {
+        Light light = new Light();
+        light.feed(30, i -> 20_000 + noise.nextInt(5_000)); // noon
+        assertEquals(List.of(AmbientPolicy.LEVEL_DAY), light.levels, "first reading");
+        light.feed(6, i -> 8); // underpass
+        light.feed(30, i -> 20_000);
+        light.feed(60, i -> i % 4 < 2 ? 5 : 300); // shadows
+        light.feed(30, i -> 20 + noise.nextInt(50)); // between the thresholds
+        assertEquals(1, light.levels.size(), "flicker: " + light.levels);
+
+        long tunnel = light.second * 1000;
+        light.feed(60, i -> 8 + noise.nextInt(4));
+        long exit = light.second * 1000;
+        light.feed(30, i -> 20_000);
+        assertEquals(List.of(AmbientPolicy.LEVEL_DAY, AmbientPolicy.LEVEL_NIGHT, AmbientPolicy.LEVEL_DAY), light.levels);
+        assertTrue(light.changedAt.get(1) - tunnel <= AmbientPolicy.DEFAULT_TO_NIGHT_MILLIS + Light.LATENCY,
+                "late into the tunnel");
+        assertTrue(light.changedAt.get(2) - exit <= AmbientPolicy.DEFAULT_TO_DAY_MILLIS + Light.LATENCY,
+                "late out of the tunnel");
+        assertEquals(2, light.policy.getSwitchCount());
+        assertTrue(light.wakeups <= light.policy.getReadingCount() / 4, "wakeups " + light.wakeups);
+    }
+
+    @Test
+    void noisyDuskSwitchesExactlyOnce() {
+        // 20 minutes of dusk with +-30% noise
+        Light dusk = new Light();
+        dusk.feed(1200, i -> (400 - i / 3.0) * (0.7 + 0.6 * noise.nextDouble()));
+        assertEquals(List.of(AmbientPolicy.LEVEL_DAY, AmbientPolicy.LEVEL_NIGHT), dusk.levels);
+        assertEquals(1, dusk.policy.getSwitchCount());
+    }
+
+    @Test
+    void quietSensorSwitchesAfterDwellAndReportLatency() {
+        // An on-change sensor goes quiet in steady light: the timer decides, after the report latency
+        Light quiet = new Light();
+        quiet.feed(5, i -> 1000);
+        quiet.policy.onReading(quiet.vs.uptimeMillis(), 3);
+        quiet.vs.advanceBy(AmbientPolicy.DEFAULT_TO_NIGHT_MILLIS + Light.LATENCY - 1);
+        assertEquals(AmbientPolicy.LEVEL_DAY, quiet.policy.level(), "switched before the latency");
+        quiet.vs.advanceBy(1);
+        assertEquals(AmbientPolicy.LEVEL_NIGHT, quiet.policy.level());
+    }
+
+    @Test
+    void firstReadingAfterStopDecidesAtOnce() {
+        Light light = new Light();
+        light.feed(5, i -> 3);
+        light.policy.onReading(light.vs.uptimeMillis(), 5_000);
+        light.policy.stop();
+        assertEquals(0, light.vs.pendingCount(), "timer left after stop");
+        light.policy.onReading(light.vs.uptimeMillis(), 5_000);
+        assertEquals(AmbientPolicy.LEVEL_DAY, light.policy.level());
+    }
+
+    @Test
+    void levelChangesWhatIsShownButNotTheUsersSettings() {
+        StyleTable styles = new StyleTable(
+                new ClockStyle("dark", 0x99000000, 0xFFFFFFFF, 0xFFFFFFFF, 0x33FFFFFF, 2f),
+                new ClockStyle("blue", 0xFF2196F3, 0xFFFFFFFF, 0xFFFFFFFF, 0x33FFFFFF, 2f),
+                new ClockStyle("light", 0x99FFFFFF, 0xFF000000, 0xFF000000, 0x33FFFFFF, 2f));
+        CommandReducer reducer = new CommandReducer(styles);
+        ClockSettings s = new ClockSettings();
+        reducer.setStyleIndex(s, 1);
+        reducer.setOpacity(s, 80);
+        reducer.setAmbient(s, AmbientPolicy.LEVEL_NIGHT);
+        assertEquals(1, s.shownStyleIndex(styles), "auto style applied while off");
+        assertEquals(80, s.shownOpacity(), "auto style applied while off");
+
+        reducer.apply(s, ClockCommands.TOGGLE_AUTO_STYLE);
+        assertEquals(0, s.shownStyleIndex(styles));
+        assertEquals(AmbientPolicy.NIGHT_OPACITY, s.shownOpacity());
+        ClockSettings before = new ClockSettings();
+        before.copyFrom(s);
+        reducer.setAmbient(s, AmbientPolicy.LEVEL_DAY);
+        assertEquals(ClockSettings.CHANGED_AMBIENT, s.changesFrom(before));
+        assertEquals(2, s.shownStyleIndex(styles));
+        assertEquals(AmbientPolicy.DAY_OPACITY, s.shownOpacity());
+
+        // What gets saved is still the user's choice, and it is back once auto style is off
+        assertEquals(1, s.styleIndex);
+        assertEquals(80, s.opacity);
+        reducer.apply(s, ClockCommands.TOGGLE_AUTO_STYLE);
+        assertEquals(1, s.shownStyleIndex(styles));
+        assertEquals(80, s.shownOpacity());
+    }
+
+    /** A batched light sensor: one reading a second, handed over a FIFO-full per LATENCY. */
+    private static final class Light {
+        static final long LATENCY = 5_000;
+        final VirtualScheduler vs = new VirtualScheduler(0);
+        final AmbientPolicy policy = new AmbientPolicy(vs, this::onLevel);
+        final List<Integer> levels = new ArrayList<>();
+        final List<Long> changedAt = new ArrayList<>();
+        long second = 0; // of the next reading
+        long wakeups = 0;
+
+        Light() {
+            policy.setReportLatency(LATENCY);
+        }
+
+        /** {@code seconds} more readings; {@code lux} gets the reading's index within this call. */
+        void feed(int seconds, IntToDoubleFunction lux) {
+            int batch = (int) (LATENCY / 1000);
+            for (int i = 0; i < seconds; i += batch) {
+                int n = Math.min(batch, seconds - i);
+                vs.advanceBy((second + n) * 1000 - vs.uptimeMillis());
+                wakeups++;
+                for (int k = 0; k < n; k++) policy.onReading((second + k) * 1000, (float) lux.applyAsDouble(i + k));
+                second += n;
+            }
+        }
+
+        private void onLevel() {
+            levels.add(policy.level());
+            changedAt.add(vs.uptimeMillis());
+        }
+    }
+}
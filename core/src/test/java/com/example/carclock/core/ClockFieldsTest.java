@@ -0,0 +1,82 @@
+package com.example.carclock.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/** Each field is formatted on its own boundary only: the zone once a minute, the date once a day. */
+class ClockFieldsTest {
+
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+    private static final ZoneId SHANGHAI = ZoneId.of("Asia/Shanghai");
+
+    // The date follows the default zone, so it is pinned for each test
+    private TimeZone savedZone;
+
+    @BeforeEach
+    void pinDefaultZone() {
+        savedZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone(NEW_YORK));
+    }
+
+    @AfterEach
+    void restoreDefaultZone() {
+        TimeZone.setDefault(savedZone);
+    }
+
+    @Test
+    void twoDaysOfSecondTicks() {
+        long start = LocalDateTime.of(2024, 3, 9, 12, 0, 30).atZone(NEW_YORK).toInstant().toEpochMilli();
+        VirtualScheduler vs = new VirtualScheduler(start);
+        ClockFields fields = new ClockFields(Locale.US);
+        fields.configure(true, true, SHANGHAI.getId(), "");
+        DateTimeFormatter zoneTime = DateTimeFormatter.ofPattern("HH:mm").withZone(SHANGHAI);
+        long[] changes = {0};
+        TickScheduler ticker = new TickScheduler(vs, vs, () -> {
+            long now = vs.currentTimeMillis();
+            if (fields.update(now)) changes[0]++;
+            LocalDate day = Instant.ofEpochMilli(now).atZone(NEW_YORK).toLocalDate();
+            assertEquals(day.toString(), fields.text(ClockFields.FIELD_DATE), "date at " + Instant.ofEpochMilli(now));
+            assertEquals(day.getDayOfWeek().getDisplayName(TextStyle.SHORT, Locale.US), fields.text(ClockFields.FIELD_WEEKDAY));
+            assertEquals("Shanghai " + zoneTime.format(Instant.ofEpochMilli(now)), fields.text(ClockFields.FIELD_ZONE));
+        });
+        ticker.start(TickScheduler.PERIOD_SECOND);
+        vs.advanceBy(2 * 86_400_000L);
+
+        long end = start + 2 * 86_400_000L;
+        long minutes = 1 + end / 60_000 - start / 60_000;
+        // 9 March noon to 11 March noon (a 23 h day in between): two midnights
+        assertEquals(3, fields.getUpdateCount(ClockFields.FIELD_DATE), "date formatted");
+        assertEquals(minutes, fields.getUpdateCount(ClockFields.FIELD_ZONE), "zone formatted");
+        assertEquals(minutes, changes[0], "field changes");
+    }
+
+    @Test
+    void turningFieldsOffIsAChange() {
+        ClockFields fields = new ClockFields(Locale.US);
+        fields.configure(true, false, SHANGHAI.getId(), "Home");
+        assertTrue(fields.update(0));
+        assertEquals("Home 08:00", fields.text(ClockFields.FIELD_ZONE));
+        assertFalse(fields.configure(true, false, SHANGHAI.getId(), "Home"), "same configuration");
+        assertFalse(fields.update(1000), "nothing changed within the minute");
+
+        fields.configure(false, false, "", "");
+        assertTrue(fields.update(2000));
+        assertNull(fields.text(ClockFields.FIELD_DATE));
+        assertNull(fields.text(ClockFields.FIELD_ZONE));
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.carclock.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/** Every command changes exactly its own group, so a no-op command commits nothing. */
+class CommandReducerTest {
+
+    private final CommandReducer reducer = new CommandReducer(new StyleTable(
+            new ClockStyle("a", 0x99000000, 0xFFFFFFFF, 0xFFFFFFFF, 0x33FFFFFF, 2f),
+            new ClockStyle("b", 0x99FFFFFF, 0xFF000000, 0xFF000000, 0, 0f)));
+    private final ClockSettings s = new ClockSettings();
+    private final ClockSettings before = new ClockSettings();
+
+    @Test
+    void togglesChangeTheirGroupAndUndoThemselves() {
+        Object[][] toggles = {
+                { ClockCommands.TOGGLE_VISIBILITY, ClockSettings.CHANGED_VISIBLE },
+                { ClockCommands.TOGGLE_PASSTHROUGH, ClockSettings.CHANGED_PASSTHROUGH },
+                { ClockCommands.CHANGE_STYLE, ClockSettings.CHANGED_STYLE },
+                { ClockCommands.TOGGLE_SECONDS, ClockSettings.CHANGED_FORMAT },
+                { ClockCommands.TOGGLE_BG, ClockSettings.CHANGED_BG },
+                { ClockCommands.TOGGLE_WEIGHT, ClockSettings.CHANGED_BOLD },
+                { ClockCommands.TOGGLE_ORIENTATION, ClockSettings.CHANGED_FORMAT },
+                { ClockCommands.TOGGLE_TOASTS, ClockSettings.CHANGED_TOASTS },
+                { ClockCommands.TOGGLE_SNAP, ClockSettings.CHANGED_SNAP },
+                { ClockCommands.TOGGLE_CLICK_MODE, ClockSettings.CHANGED_CLICK_MODE },
+                { ClockCommands.TOGGLE_DATE, ClockSettings.CHANGED_FIELDS },
+                { ClockCommands.TOGGLE_WEEKDAY, ClockSettings.CHANGED_FIELDS },
+                { ClockCommands.TOGGLE_AUTO_STYLE, ClockSettings.CHANGED_AUTO_STYLE },
+        };
+        for (Object[] toggle : toggles) {
+            String action = (String) toggle[0];
+            before.copyFrom(s);
+            assertTrue(reducer.apply(s, action), action + " not handled");
+            assertEquals((int) toggle[1], s.changesFrom(before), action);
+            reducer.apply(s, action);
+            assertEquals(0, s.changesFrom(before), action + " twice");
+        }
+    }
+
+    @Test
+    void settingWhatIsAlreadySetChangesNothing() {
+        reducer.setViewport(1920, 720, 240, 96);
+        reducer.apply(s, ClockCommands.RESET_POSITION);
+        before.copyFrom(s);
+        for (String action : new String[] { ClockCommands.SET_VISIBLE, ClockCommands.SET_BLOCKING,
+                ClockCommands.SET_OPACITY, ClockCommands.RESET_POSITION }) {
+            reducer.apply(s, action);
+            assertEquals(0, s.changesFrom(before), action + " repeated");
+        }
+        reducer.setOpacity(s, s.opacity);
+        reducer.setTextSize(s, s.textSize);
+        reducer.setSecondZone(s, "Not/AZone", "x");
+        assertEquals(0, s.changesFrom(before), "same values or an unknown zone");
+        reducer.setSecondZone(s, "Asia/Tokyo", "");
+        assertEquals(ClockSettings.CHANGED_FIELDS, s.changesFrom(before), "second zone");
+    }
+
+    @Test
+    void unknownActionsAreNotCommands() {
+        before.copyFrom(s);
+        assertFalse(reducer.apply(s, "com.example.carclock.ACTION_NOPE"));
+        assertEquals(0, s.changesFrom(before));
+    }
+
+    @Test
+    void layoutAndSharedGroupsSplitEveryBit() {
+        assertEquals(0, ClockSettings.CHANGED_LAYOUT & ClockSettings.CHANGED_SHARED);
+        assertEquals(ClockSettings.CHANGED_ALL, ClockSettings.CHANGED_LAYOUT | ClockSettings.CHANGED_SHARED);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.carclock.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/** A slider drag dispatches at most once per frame, always ending on the last value. */
+class FrameCoalescerTest {
+
+    private static final int STEPS = 200;
+    private static final long EVENT_MILLIS = 4; // touch reports at 250 Hz
+    private static final long FRAME_MILLIS = 16;
+
+    private final VirtualScheduler vs = new VirtualScheduler(0);
+    private final FrameCoalescer coalescer = new FrameCoalescer();
+    private int dispatches = 0;
+    private int lastDispatched = FrameCoalescer.NONE;
+
+    private final Runnable frame = () -> {
+        int value = coalescer.take();
+        if (value == FrameCoalescer.NONE) return;
+        dispatch(value);
+    };
+
+    @Test
+    void dragDispatchesOncePerFrame() {
+        for (int step = 0; step < STEPS; step++) {
+            vs.advanceBy(EVENT_MILLIS);
+            // postOnAnimation: runs at the next frame boundary
+            if (coalescer.offer(step)) vs.postAtTime(frame, (vs.uptimeMillis() / FRAME_MILLIS + 1) * FRAME_MILLIS);
+        }
+        vs.advanceBy(FRAME_MILLIS);
+
+        long frames = STEPS * EVENT_MILLIS / FRAME_MILLIS;
+        assertTrue(dispatches <= frames + 1, dispatches + " dispatches for " + frames + " frames");
+        assertEquals(STEPS - 1, lastDispatched, "final value dropped");
+        assertFalse(coalescer.hasPending());
+    }
+
+    @Test
+    void burstInsideOneFrameIsOneDispatchOfTheLastValue() {
+        // Four events land between two frame boundaries; an intent per event would be four dispatches
+        for (int value = 10; value <= 40; value += 10) {
+            vs.advanceBy(EVENT_MILLIS - 1);
+            if (coalescer.offer(value)) vs.postAtTime(frame, FRAME_MILLIS);
+        }
+        assertEquals(0, dispatches, "dispatched before the frame");
+        vs.advanceBy(FRAME_MILLIS);
+        assertEquals(1, dispatches);
+        assertEquals(40, lastDispatched);
+        assertFalse(coalescer.hasPending());
+    }
+
+    @Test
+    void onlyTheFirstOfABurstSchedules() {
+        assertTrue(coalescer.offer(10));
+        assertFalse(coalescer.offer(20));
+        assertEquals(20, coalescer.take());
+        assertEquals(FrameCoalescer.NONE, coalescer.take());
+        assertTrue(coalescer.offer(0));
+    }
+
+    private void dispatch(int value) {
+        assertTrue(value > lastDispatched, "dispatched out of order");
+        dispatches++;
+        lastDispatched = value;
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.carclock.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Click / double-click / long-press windows, to the millisecond, with timers on a virtual scheduler. */
+class GestureRecognizerTest {
+
+    private static final long LONG_PRESS = 800;
+    private static final long DOUBLE_TAP = 300;
+
+    private final VirtualScheduler vs = new VirtualScheduler(0);
+    private final Gestures g = new Gestures(vs);
+    private final GestureRecognizer r = g.recognizer;
+
+    @Test
+    void clickWaitsForTheDoubleTapWindow() {
+        vs.advanceBy(1000);
+        r.onDown(vs.uptimeMillis(), 100, 100);
+        vs.advanceBy(60);
+        r.onUp(vs.uptimeMillis(), 101, 100);
+        vs.advanceBy(DOUBLE_TAP - 1);
+        g.expect();
+        vs.advanceBy(1);
+        g.expect("click@" + (1000 + 60 + DOUBLE_TAP));
+        assertEquals(60 + DOUBLE_TAP, r.getLastLatencyMillis());
+    }
+
+    @Test
+    void secondTapInsideTheWindowIsADoubleClick() {
+        r.onDown(0, 100, 100);
+        vs.advanceBy(50);
+        r.onUp(vs.uptimeMillis(), 100, 100);
+        vs.advanceBy(DOUBLE_TAP - 60);
+        r.onDown(vs.uptimeMillis(), 102, 100);
+        vs.advanceBy(50);
+        r.onUp(vs.uptimeMillis(), 102, 100);
+        g.expect("double@" + (DOUBLE_TAP + 40));
+        assertEquals(DOUBLE_TAP + 40, r.getLastLatencyMillis(), "measured from the first tap");
+        vs.advanceBy(DOUBLE_TAP + LONG_PRESS);
+        g.expect();
+    }
+
+    @Test
+    void longPressFiresAtTheTimeoutAndTheReleaseIsNoClick() {
+        r.onDown(0, 100, 100);
+        vs.advanceBy(LONG_PRESS - 1);
+        g.expect();
+        vs.advanceBy(1);
+        g.expect("long@" + LONG_PRESS);
+        vs.advanceBy(200);
+        r.onUp(vs.uptimeMillis(), 100, 100);
+        vs.advanceBy(DOUBLE_TAP + 1);
+        g.expect();
+    }
+
+    @Test
+    void dragPastTheSlopIsNeverALongPress() {
+        r.onDown(0, 100, 100);
+        vs.advanceBy(100);
+        r.onMove(vs.uptimeMillis(), 140, 100);
+        vs.advanceBy(2 * LONG_PRESS);
+        r.onUp(vs.uptimeMillis(), 140, 100);
+        vs.advanceBy(DOUBLE_TAP + 1);
+        g.expect("drag");
+    }
+
+    @Test
+    void singleClickModeReportsOnUp() {
+        r.setSingleClickOnly(true);
+        r.onDown(0, 100, 100);
+        vs.advanceBy(40);
+        r.onUp(vs.uptimeMillis(), 100, 100);
+        g.expect("click@40");
+        assertEquals(0, vs.pendingCount(), "gesture timers left pending");
+    }
+
+    /** Recognizer with its timers on the virtual scheduler, recording what fired and when. */
+    private static final class Gestures implements GestureRecognizer.Callback {
+        final VirtualScheduler vs;
+        final GestureRecognizer recognizer;
+        final List<String> events = new ArrayList<>();
+        private final Runnable longPressTimer;
+        private final Runnable clickTimer;
+
+        Gestures(VirtualScheduler vs) {
+            this.vs = vs;
+            recognizer = new GestureRecognizer(this, 16f, LONG_PRESS, DOUBLE_TAP);
+            longPressTimer = () -> recognizer.onTimer(GestureRecognizer.TIMER_LONG_PRESS, vs.uptimeMillis());
+            clickTimer = () -> recognizer.onTimer(GestureRecognizer.TIMER_CLICK, vs.uptimeMillis());
+        }
+
+        void expect(String... expected) {
+            assertEquals(List.of(expected), events);
+            events.clear();
+        }
+
+        @Override public void onClick() { events.add("click@" + vs.uptimeMillis()); }
+        @Override public void onDoubleClick() { events.add("double@" + vs.uptimeMillis()); }
+        @Override public void onLongPress() { events.add("long@" + vs.uptimeMillis()); }
+        @Override public void onDragStart() { events.add("drag"); }
+        @Override public void onDrag(float dx, float dy) {}
+        @Override public void onDragEnd() {}
+
+        @Override
+        public void scheduleTimer(int timer, long delayMillis) {
+            Runnable r = timer == GestureRecognizer.TIMER_LONG_PRESS ? longPressTimer : clickTimer;
+            vs.remove(r);
+            vs.postDelayed(r, delayMillis);
+        }
+
+        @Override
+        public void cancelTimer(int timer) {
+            vs.remove(timer == GestureRecognizer.TIMER_LONG_PRESS ? longPressTimer : clickTimer);
+        }
+    }
+}
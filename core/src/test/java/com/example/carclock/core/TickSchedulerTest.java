@@ -0,0 +1,94 @@
+package com.example.carclock.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/** Ticks in virtual time, every one checked against java.time. */
+class TickSchedulerTest {
+
+    private static final long DAY = 86_400_000L;
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    @Test
+    void springForward() {
+        day(NEW_YORK, LocalDateTime.of(2024, 3, 10, 0, 0, 0, 250_000_000), TickScheduler.PERIOD_SECOND);
+    }
+
+    @Test
+    void fallBack() {
+        day(NEW_YORK, LocalDateTime.of(2024, 11, 3, 0, 0, 0, 0), TickScheduler.PERIOD_SECOND);
+    }
+
+    @Test
+    void halfHourOffsetMinuteTick() {
+        day(ZoneId.of("Asia/Kolkata"), LocalDateTime.of(2024, 6, 1, 12, 34, 56, 789_000_000), TickScheduler.PERIOD_MINUTE);
+    }
+
+    /** The wall clock jumps both ways; after resync (ACTION_TIME_SET) ticks realign to the new boundaries. */
+    @Test
+    void wallClockJumps() {
+        long start = LocalDateTime.of(2024, 6, 1, 8, 0).atZone(NEW_YORK).toInstant().toEpochMilli();
+        Ticker t = new Ticker(NEW_YORK, start, TickScheduler.PERIOD_SECOND);
+        t.ticker.start(TickScheduler.PERIOD_SECOND);
+        t.vs.advanceBy(10_000);
+
+        for (long jump : new long[] { 37_456, -3_600_123 }) {
+            t.vs.setWallTime(t.vs.currentTimeMillis() + jump);
+            t.ticker.resync();
+            long before = t.ticks;
+            t.vs.advanceBy(0);
+            assertEquals(before + 1, t.ticks, "immediate tick after resync");
+            long maxBefore = t.ticker.getJitter().getMax();
+            t.vs.advanceBy(60_000);
+            assertEquals(before + 61, t.ticks, "jump " + jump + ": ticks in a minute");
+            assertEquals(0, t.lastTick % 1000, "jump " + jump + ": ticking off the boundary");
+            assertEquals(maxBefore, t.ticker.getJitter().getMax(), "jump " + jump + ": jitter after resync");
+        }
+        t.ticker.stop();
+        assertEquals(0, t.vs.pendingCount(), "tick still pending after stop");
+    }
+
+    /** 24 h of ticks: every tick on its boundary, the right count, the text matching java.time. */
+    private static void day(ZoneId zone, LocalDateTime localStart, long period) {
+        long start = localStart.atZone(zone).toInstant().toEpochMilli();
+        Ticker t = new Ticker(zone, start, period);
+        t.ticker.start(period);
+        t.vs.advanceBy(DAY);
+
+        long end = start + DAY;
+        assertEquals(1 + end / period - start / period, t.ticks, "the immediate tick plus every boundary");
+        assertEquals(end / period * period, t.lastTick, "last tick drifted");
+        assertEquals(0, t.ticker.getJitter().getMax(), "boundary jitter");
+        assertEquals(1, t.vs.pendingCount(), "pending tasks");
+    }
+
+    /** A TickScheduler in virtual time whose every tick checks the formatter against java.time. */
+    private static final class Ticker {
+        final VirtualScheduler vs;
+        final TickScheduler ticker;
+        long ticks = 0;
+        long lastTick = 0;
+
+        Ticker(ZoneId zone, long start, long period) {
+            vs = new VirtualScheduler(start);
+            boolean seconds = period == TickScheduler.PERIOD_SECOND;
+            TimeFormatter formatter = new TimeFormatter();
+            formatter.setZone(zone);
+            DateTimeFormatter reference = DateTimeFormatter.ofPattern(seconds ? "HH:mm:ss" : "HH:mm").withZone(zone);
+            ticker = new TickScheduler(vs, vs, () -> {
+                long now = vs.currentTimeMillis();
+                formatter.format(now, seconds, false);
+                assertEquals(reference.format(Instant.ofEpochMilli(now)), new String(formatter.buffer(), 0, formatter.length()),
+                        zone + " at " + Instant.ofEpochMilli(now));
+                ticks++;
+                lastTick = now;
+            });
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.carclock.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/** Once warmed up, formatting a tick allocates nothing. */
+class TimeFormatterTest {
+
+    private static final int TICKS = 100_000;
+
+    @Test
+    void tickFormattingAllocatesNothing() {
+        TimeFormatter formatter = new TimeFormatter();
+        formatter.setZone(ZoneId.of("America/New_York"));
+        // No zone transition within TICKS seconds of this, so the cached offset holds throughout
+        long start = Instant.parse("2024-06-01T00:00:00Z").toEpochMilli();
+        for (int i = 0; i < TICKS; i++) {
+            formatter.format(start + i * 1000L, (i & 1) == 0, false);
+            formatter.formatDuration(i * 10L, false);
+        }
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        long after = threads.getThreadAllocatedBytes(thread);
+        long overhead = after - before; // what the reading itself costs, if anything
+
+        before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < TICKS; i++) {
+            formatter.format(start + i * 1000L, (i & 1) == 0, false);
+            formatter.formatDuration(i * 10L, false);
+        }
+        after = threads.getThreadAllocatedBytes(thread);
+        assertEquals(0, after - before - overhead, "bytes allocated over " + TICKS + " ticks");
+    }
+}
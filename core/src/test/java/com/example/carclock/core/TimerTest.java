@@ -0,0 +1,95 @@
+package com.example.carclock.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/** Stopwatch and countdown read from their elapsedRealtime anchor, whatever the command order. */
+class TimerTest {
+
+    private final CommandReducer reducer = new CommandReducer(new StyleTable(
+            new ClockStyle("a", 0x99000000, 0xFFFFFFFF, 0xFFFFFFFF, 0x33FFFFFF, 2f)));
+    private final ClockSettings s = new ClockSettings();
+
+    @Test
+    void stopwatchPausesResumesAndResets() {
+        // START from the clock is the stopwatch
+        command(10_000, ClockCommands.TIMER_START);
+        assertEquals(ClockSettings.MODE_STOPWATCH, s.mode);
+        assertTrue(s.timerRunning);
+        command(12_345, ClockCommands.TIMER_PAUSE);
+        assertEquals(2_345, s.timerDisplayMillis(99_999), "paused stopwatch moved");
+        command(20_000, ClockCommands.TIMER_START);
+        assertEquals(3_345, s.timerDisplayMillis(21_000), "resumed");
+
+        // A copy (what a restarted process loads) reads the same: nothing was counted
+        ClockSettings restored = new ClockSettings();
+        restored.copyFrom(s);
+        assertEquals(s.timerDisplayMillis(3_600_000), restored.timerDisplayMillis(3_600_000));
+
+        command(30_000, ClockCommands.TIMER_RESET);
+        assertFalse(s.timerRunning);
+        assertEquals(0, s.timerDisplayMillis(50_000));
+    }
+
+    @Test
+    void countdownStopsAtZeroAndStartsOver() {
+        reducer.setCountdown(s, 90_000);
+        assertEquals(ClockSettings.MODE_COUNTDOWN, s.mode);
+        assertFalse(s.timerRunning);
+        assertEquals(90_000, s.timerDisplayMillis(0));
+
+        command(100_000, ClockCommands.TIMER_START);
+        assertEquals(60_000, s.timerDisplayMillis(130_000), "at 30 s");
+        assertFalse(s.countdownFinished(189_999));
+        assertTrue(s.countdownFinished(190_000));
+        assertEquals(0, s.timerDisplayMillis(500_000), "went negative");
+
+        command(500_000, ClockCommands.TIMER_PAUSE);
+        assertEquals(90_000, s.timerElapsed, "finished countdown paused past its length");
+        command(600_000, ClockCommands.TIMER_START);
+        assertEquals(89_000, s.timerDisplayMillis(601_000), "restart after zero");
+    }
+
+    @Test
+    void durationIsClamped() {
+        reducer.setCountdown(s, 10);
+        assertEquals(1000, s.countdownMillis);
+        reducer.setCountdown(s, 1000 * 3_600_000L);
+        assertEquals(CommandReducer.MAX_COUNTDOWN_MILLIS, s.countdownMillis);
+    }
+
+    @Test
+    void switchingModesResetsTheTimer() {
+        reducer.setCountdown(s, 90_000);
+        command(1_000, ClockCommands.TIMER_START);
+        reducer.setMode(s, "nonsense");
+        assertEquals(ClockSettings.MODE_COUNTDOWN, s.mode, "unknown mode applied");
+        assertTrue(s.timerRunning);
+        reducer.setMode(s, "clock");
+        assertEquals(ClockSettings.MODE_CLOCK, s.mode);
+        assertFalse(s.timerRunning);
+    }
+
+    @Test
+    void durationFormat() {
+        // Hundredths under an hour, in the same eight cells as hh:mm:ss
+        assertDuration(3_345, "00:03.34");
+        assertDuration(59 * 60_000 + 59_999, "59:59.99");
+        assertDuration(3_600_000, "01:00:00");
+        assertDuration(200 * 3_600_000L, "99:59:59");
+    }
+
+    private void command(long elapsedRealtime, String action) {
+        reducer.setElapsedRealtime(elapsedRealtime);
+        reducer.apply(s, action);
+    }
+
+    private static void assertDuration(long millis, String expected) {
+        TimeFormatter f = new TimeFormatter();
+        f.formatDuration(millis, false);
+        assertEquals(expected, new String(f.buffer(), 0, f.length()), millis + " ms");
+    }
+}